@@ -0,0 +1,17 @@
+package com.playmyskay.octree.common;
+
+import com.badlogic.gdx.math.collision.BoundingBox;
+
+public interface IOctreeBatchListener<N extends OctreeNode<N>> {
+
+	public static class BatchUpdateData<N extends OctreeNode<N>> {
+		// node of the key level containing the edits
+		public N node;
+		// number of edits which changed the octree
+		public int count;
+		// region of the changed voxels
+		public BoundingBox dirty = new BoundingBox().inf();
+	}
+
+	public void update (BatchUpdateData<N> batchUpdateData);
+}
@@ -1,9 +1,27 @@
 package com.playmyskay.octree.common;
 
+import java.util.List;
+
 public interface IOctreeNodeProvider<N extends OctreeNode<N>> {
 	public N create (int level);
 
 	public N[] createArray (int level, int size);
 
 	public int levelIndex (Class<?> clazz);
+
+	/* true if new child arrays start packed (see OctreeNode.childMask) */
+	public boolean compact ();
+
+	/* number of free nodes of the given class kept for reuse, see OctreeStats */
+	public int pooled (Class<?> clazz);
+
+	/* takes back a detached node and its child array, both are read by nobody anymore */
+	public void free (N node);
+
+	/* takes back the nodes of a detached subtree at once, children before their parent */
+	public default void free (List<N> nodes) {
+		for (N node : nodes) {
+			free(node);
+		}
+	}
 }
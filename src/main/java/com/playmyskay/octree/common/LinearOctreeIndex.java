@@ -0,0 +1,110 @@
+package com.playmyskay.octree.common;
+
+/*
+ * Linear octree: every node up to the key level is reachable by its OctreeKey in one hash probe, so point lookups
+ * and edits don't have to walk down from the root. The pointer structure of the octree stays the same; the index is
+ * maintained next to it by the Octree.
+ *
+ * The keys are split into stripes by their ancestor of the key level, so all nodes of one chunk share a map which
+ * is guarded by the lock of the same stripe in the Octree.
+ */
+public class LinearOctreeIndex<N extends OctreeNode<N>> {
+	private OctreeNodeMap<N>[] maps;
+	private int keyLevel;
+
+	public LinearOctreeIndex(int keyLevel) {
+		this(keyLevel, 1);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public LinearOctreeIndex(int keyLevel, int stripes) {
+		this.keyLevel = keyLevel;
+		maps = new OctreeNodeMap[stripes];
+		for (int i = 0; i < stripes; ++i) {
+			maps[i] = new OctreeNodeMap<>(4096 / stripes);
+		}
+	}
+
+	/* stripes must be a power of two */
+	private OctreeNodeMap<N> map (long key) {
+		if (maps.length == 1) return maps[0];
+		return maps[OctreeKey.hash(OctreeKey.ancestor(key, keyLevel)) & (maps.length - 1)];
+	}
+
+	public int keyLevel () {
+		return keyLevel;
+	}
+
+	public N get (long key) {
+		if (OctreeKey.level(key) > keyLevel) return null;
+		return map(key).get(key);
+	}
+
+	public N get (int level, int x, int y, int z) {
+		return get(OctreeKey.encode(level, x, y, z));
+	}
+
+	public void put (long key, N node) {
+		if (OctreeKey.level(key) > keyLevel) return;
+		map(key).put(key, node);
+	}
+
+	public N remove (long key) {
+		if (OctreeKey.level(key) > keyLevel) return null;
+		return map(key).remove(key);
+	}
+
+	/* key of the deepest indexed node containing the position or OctreeKey.NONE */
+	public long find (int x, int y, int z) {
+		long key = OctreeKey.encode(0, x, y, z);
+		OctreeNodeMap<N> map = map(key);
+		for (int level = 0; level <= keyLevel; ++level) {
+			if (map.containsKey(key)) return key;
+			key = OctreeKey.parent(key);
+		}
+		return OctreeKey.NONE;
+	}
+
+	/* indexes the node and its ancestors up to the key level */
+	public void addPath (N node, int x, int y, int z) {
+		long key = OctreeKey.encode(0, x, y, z);
+		OctreeNodeMap<N> map = map(key);
+		for (int level = 0; level <= keyLevel && node != null; ++level) {
+			map.put(key, node);
+			node = node.parent();
+			key = OctreeKey.parent(key);
+		}
+	}
+
+	public void addSubtree (N node, long key) {
+		if (node == null) return;
+		put(key, node);
+		for (int mask = node.childMask(); mask != 0; mask &= mask - 1) {
+			int i = Integer.numberOfTrailingZeros(mask);
+			addSubtree(node.child(i), OctreeKey.child(key, i));
+		}
+	}
+
+	public void removeSubtree (N node, long key) {
+		if (node == null) return;
+		if (get(key) == node) remove(key);
+		for (int mask = node.childMask(); mask != 0; mask &= mask - 1) {
+			int i = Integer.numberOfTrailingZeros(mask);
+			removeSubtree(node.child(i), OctreeKey.child(key, i));
+		}
+	}
+
+	public int size () {
+		int size = 0;
+		for (OctreeNodeMap<N> map : maps) {
+			size += map.size();
+		}
+		return size;
+	}
+
+	public void clear () {
+		for (OctreeNodeMap<N> map : maps) {
+			map.clear();
+		}
+	}
+}
@@ -1,33 +1,128 @@
 package com.playmyskay.octree.common;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.BoundingBox;
+import com.playmyskay.octree.common.IOctreeBatchListener.BatchUpdateData;
 import com.playmyskay.octree.common.IOctreeListener.NodeUpdateData;
 import com.playmyskay.octree.common.OctreeNodeDescriptor.BaseActionType;
+import com.playmyskay.octree.common.OctreeTools.INodeHandler;
 
 public class Octree<N extends OctreeNode<N>, D extends OctreeNodeDescriptor> {
+	public static final int STRIPES = 64;
+
 	public int curLevel = -1;
 	public int minDepth = -1;
+	// nodes up to this level are aligned on their own size and can be addressed by an OctreeKey
+	public int keyLevel = -1;
 	public N rootNode;
 	public IOctreeNodeProvider<N> nodeProvider;
 	private Vector3[] corners = new Vector3[8];
 	private float[] dst2 = new float[8];
 	private Vector3 tmp = new Vector3();
-	private List<IOctreeListener<N, D>> octreeListenerList = new ArrayList<>();
-	private OctreeCalc calc = OctreeCalcPoolManager.obtain();
+	private List<IOctreeListener<N, D>> octreeListenerList = new CopyOnWriteArrayList<>();
+	private List<IOctreeBatchListener<N>> batchListenerList = new CopyOnWriteArrayList<>();
+	private LinearOctreeIndex<N> linearIndex;
+	// the nodes of the key level by their OctreeKey, only changed under the write lock
+	private OctreeNodeMap<N> chunkIndex = new OctreeNodeMap<>(4096);
+	private BoundingBox createBoundingBox = new BoundingBox();
+	private Vector3 position = new Vector3();
+	/*
+	 * The structure above the key level is only changed under the write lock. Edits below a node of the key level
+	 * hold the read lock and the lock of the stripe of that node, so edits in different chunks run in parallel.
+	 */
+	private ReentrantReadWriteLock structureLock = new ReentrantReadWriteLock();
+	private Object[] chunkLocks = new Object[STRIPES];
+	// nodes of an older epoch are shared with a snapshot and are copied before they are changed
+	private int epoch;
+	private volatile OctreeSnapshot<N> snapshot;
+	// the live root the copies of the last snapshot have been taken from, see publish()
+	private N publishedRoot;
+	private volatile boolean modified = true;
+	private OctreeStats stats = new OctreeStats();
+	/*
+	 * Detached subtrees and replaced nodes wait in the retired list until no acquired snapshot can reach them anymore
+	 * (see retire()). The list, the acquired snapshots and the reclaimed epoch are guarded by the monitor of the
+	 * retired list.
+	 */
+	private List<Retired<N>> retired = new ArrayList<>();
+	private List<OctreeSnapshot<N>> readSnapshots = new ArrayList<>();
+	private int reclaimedEpoch = -1;
+	// the interner of the shared subtrees, it is told about the references dropped by recycled parents
+	private volatile OctreeInterner<N> interner;
+
+	private static class Retired<N> {
+		final N node;
+		final int epoch;
+		// false for a node replaced by a copy, its children belong to the copy
+		final boolean subtree;
+
+		Retired(N node, int epoch, boolean subtree) {
+			this.node = node;
+			this.epoch = epoch;
+			this.subtree = subtree;
+		}
+	}
 
 	protected Octree(int minDepth) {
 		this.minDepth = minDepth;
+		this.keyLevel = minDepth - 1;
 		for (int i = 0; i < 8; i++) {
 			corners[i] = new Vector3();
 		}
+		for (int i = 0; i < STRIPES; i++) {
+			chunkLocks[i] = new Object();
+		}
 	}
 
 	public void setNodeProvider (IOctreeNodeProvider<N> nodeProvider) {
 		this.nodeProvider = nodeProvider;
+		stats.nodeProvider(nodeProvider);
+	}
+
+	public OctreeStats stats () {
+		return stats;
+	}
+
+	public void linearIndex (boolean enabled) {
+		structureLock.writeLock().lock();
+		try {
+			if (!enabled) {
+				linearIndex = null;
+				return;
+			}
+			if (linearIndex != null) return;
+
+			linearIndex = new LinearOctreeIndex<>(keyLevel, STRIPES);
+			if (rootNode != null && curLevel <= keyLevel) {
+				linearIndex.addSubtree(rootNode, key(rootNode, curLevel));
+			}
+		} finally {
+			structureLock.writeLock().unlock();
+		}
+	}
+
+	public LinearOctreeIndex<N> linearIndex () {
+		return linearIndex;
+	}
+
+	private long key (N node, int level) {
+		if (!node.hasBoundingBox()) return node.key();
+		Vector3 min = node.boundingBox().min;
+		return OctreeKey.encode(level, (int) min.x, (int) min.y, (int) min.z);
+	}
+
+	/* level of a node in the tree, derived from its bounding box or its key */
+	private int level (N node) {
+		if (node.hasBoundingBox()) return Integer.numberOfTrailingZeros((int) node.boundingBox().getWidth());
+		long key = node.key();
+		return key != OctreeKey.NONE ? OctreeKey.level(key) : -1;
 	}
 
 	public void addListener (IOctreeListener<N, D> octreeListener) {
@@ -38,12 +133,23 @@ public class Octree<N extends OctreeNode<N>, D extends OctreeNodeDescriptor> {
 		octreeListenerList.remove(octreeListener);
 	}
 
+	public void addBatchListener (IOctreeBatchListener<N> batchListener) {
+		batchListenerList.add(batchListener);
+	}
+
+	public void removeBatchListener (IOctreeBatchListener<N> batchListener) {
+		batchListenerList.remove(batchListener);
+	}
+
 	private void createRootNode (Vector3 v) {
 		if (rootNode != null) return;
 		curLevel = minDepth - 1;
 		rootNode = nodeProvider.create(curLevel);
 		int dim = (int) Math.pow(2, curLevel);
 		rootNode.boundingBox().set(new Vector3(0f, 0f, 0f), new Vector3(dim, dim, dim));
+		stats.add(rootNode, curLevel);
+		if (linearIndex != null) linearIndex.put(OctreeKey.encode(curLevel, 0, 0, 0), rootNode);
+		if (curLevel == keyLevel) chunkIndex.put(OctreeKey.encode(curLevel, 0, 0, 0), rootNode);
 	}
 
 	private boolean needRootExpansion (Vector3 v) {
@@ -67,8 +173,7 @@ public class Octree<N extends OctreeNode<N>, D extends OctreeNodeDescriptor> {
 		}
 
 		while (needRootExpansion(v)) {
-			calc.reset();
-			int near = OctreeTools.getNearestIndex(rootNode.boundingBox(), v, corners, dst2, calc);
+			int near = OctreeTools.getNearestIndex(rootNode.boundingBox(), v, corners, dst2);
 			int far = 7 - near;
 
 			// min is the farthest corner of vector v
@@ -88,31 +193,273 @@ public class Octree<N extends OctreeNode<N>, D extends OctreeNodeDescriptor> {
 
 			// The new enclosing root node sets the current root node as its child.
 			// The index is visually the nearest node of its origin expansion direction.
-			newRootNode.childs(nodeProvider.createArray(curLevel, 8));
+			OctreeTools.createChilds(nodeProvider, newRootNode, curLevel + 1);
 			newRootNode.child(far, rootNode);
 			rootNode.parent(newRootNode);
 			rootNode = newRootNode;
+			stats.add(rootNode, curLevel + 1);
 
 			curLevel++;
 		}
 		return true;
 	}
 
-	public synchronized N setNode (Vector3 v, D descriptor) {
-		OctreeTools.adjustVector(v);
+	public N setNode (Vector3 v, D descriptor) {
+		return setNode(MathUtils.floor(v.x), MathUtils.floor(v.y), MathUtils.floor(v.z), descriptor);
+	}
 
-		if (!expandRootNode(v, descriptor.getBaseActionType())) {
-			return null;
+	public N setNode (int x, int y, int z, D descriptor) {
+		N updateNode = null;
+		switch (descriptor.getBaseActionType()) {
+		case add:
+			updateNode = addNode(x, y, z, descriptor);
+			break;
+		case remove:
+			updateNode = removeNode(x, y, z, descriptor);
+			break;
+		default:
+			throw new RuntimeException("Unknown Type " + descriptor.getBaseActionType().toString());
 		}
 
-		N updateNode = processDescriptor(v, descriptor, new OctreeCalc());
-		OctreeTools.updateNode(updateNode, descriptor);
+		if (updateNode == null) return null;
 
 		updateListeners(updateNode, descriptor);
 
 		return updateNode;
 	}
 
+	public N remove (int x, int y, int z, D descriptor) {
+		if (descriptor.getBaseActionType() != BaseActionType.remove) {
+			throw new RuntimeException("remove descriptor expected: " + descriptor.getBaseActionType().toString());
+		}
+		return setNode(x, y, z, descriptor);
+	}
+
+	/* leaf at the given position, the uniform node covering it or null */
+	public N get (int x, int y, int z) {
+		structureLock.readLock().lock();
+		try {
+			if (rootNode == null) return null;
+			synchronized (chunkLocks[stripe(x, y, z)]) {
+				return leaf(x, y, z);
+			}
+		} finally {
+			structureLock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * Immutable view of the octree, a new one is only taken if the octree has been changed since the last one. It
+	 * takes over the copies of the last one and only copies the paths to the nodes changed since.
+	 */
+	public OctreeSnapshot<N> snapshot () {
+		OctreeSnapshot<N> snapshot = this.snapshot;
+		if (snapshot != null && !modified) return snapshot;
+
+		structureLock.writeLock().lock();
+		try {
+			snapshot = this.snapshot;
+			if (snapshot != null && !modified) return snapshot;
+			modified = false;
+			// a new root has other children, the copies of the old one are not taken over
+			N published = snapshot != null && rootNode == publishedRoot ? snapshot.rootNode : null;
+			if (snapshot != null && snapshot.rootNode != null && published == null) {
+				retireCopies(snapshot.rootNode, snapshot.curLevel);
+			}
+			N root = rootNode != null ? publish(rootNode, published, curLevel) : null;
+			publishedRoot = rootNode;
+			++epoch;
+			return this.snapshot = new OctreeSnapshot<>(root, curLevel, keyLevel, epoch);
+		} finally {
+			structureLock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Snapshot whose nodes are not recycled before releaseSnapshot(). A snapshot taken by snapshot() is only safe to
+	 * read as long as no retired node is reclaimed.
+	 */
+	public OctreeSnapshot<N> acquireSnapshot () {
+		while (true) {
+			OctreeSnapshot<N> snapshot = snapshot();
+			synchronized (retired) {
+				// nodes of the snapshot have been recycled before it was registered, the next one is taken
+				if (reclaimedEpoch >= snapshot.epoch) continue;
+				if (snapshot.readers++ == 0) readSnapshots.add(snapshot);
+				return snapshot;
+			}
+		}
+	}
+
+	public void releaseSnapshot (OctreeSnapshot<N> snapshot) {
+		synchronized (retired) {
+			if (--snapshot.readers == 0) readSnapshots.remove(snapshot);
+		}
+	}
+
+	/*
+	 * Hands a subtree detached from the octree over to reclaim(), which returns its nodes and child arrays to the
+	 * node provider once neither an acquired snapshot nor the user of its root (see OctreeNode.inUse()) reads it.
+	 */
+	public void retire (N node) {
+		structureLock.readLock().lock();
+		try {
+			synchronized (retired) {
+				retired.add(new Retired<>(node, epoch, true));
+			}
+		} finally {
+			structureLock.readLock().unlock();
+		}
+	}
+
+	/* retires a node replaced by a copy, the caller holds a lock of the structure */
+	private void retireNode (N node) {
+		synchronized (retired) {
+			retired.add(new Retired<>(node, epoch, false));
+		}
+	}
+
+	/* frees the retired subtrees which are read by nobody anymore, returns the number of freed nodes */
+	public int reclaim () {
+		List<N> freed = new ArrayList<>();
+		List<N> released = new ArrayList<>();
+		synchronized (retired) {
+			// a retired subtree is part of the snapshots up to the epoch it has been retired in
+			int readableEpoch = Integer.MAX_VALUE;
+			for (OctreeSnapshot<N> snapshot : readSnapshots) {
+				readableEpoch = Math.min(readableEpoch, snapshot.epoch);
+			}
+			int kept = 0;
+			for (Retired<N> entry : retired) {
+				if (entry.epoch >= readableEpoch || entry.node.inUse()) {
+					retired.set(kept++, entry);
+					continue;
+				}
+				if (entry.subtree) {
+					collect(entry.node, freed, released);
+				} else {
+					freed.add(entry.node);
+				}
+				reclaimedEpoch = Math.max(reclaimedEpoch, entry.epoch);
+			}
+			retired.subList(kept, retired.size()).clear();
+		}
+		OctreeInterner<N> interner = this.interner;
+		if (interner != null) {
+			for (N node : released) {
+				interner.release(node);
+			}
+		}
+		if (!freed.isEmpty()) nodeProvider.free(freed);
+		return freed.size();
+	}
+
+	/* number of retired subtrees and nodes waiting for their readers */
+	public int retired () {
+		synchronized (retired) {
+			return retired.size();
+		}
+	}
+
+	/*
+	 * The nodes of the subtree children before their parent. The shared subtrees belong to the interner, the ones
+	 * the subtree refers to are added to the released nodes.
+	 */
+	private static <N extends OctreeNode<N>> void collect (N node, List<N> nodes, List<N> released) {
+		if (node.shared()) {
+			released.add(node);
+			return;
+		}
+		for (int mask = node.childMask(); mask != 0; mask &= mask - 1) {
+			collect(node.child(Integer.numberOfTrailingZeros(mask)), nodes, released);
+		}
+		nodes.add(node);
+	}
+
+	/*
+	 * Copy of the live node of the given level for a snapshot, the nodes above and of the key level are copied with
+	 * a child array of their own, the nodes below are shared. The copy taken for the last snapshot is taken over as
+	 * long as the node hasn't been changed since (see writable()), otherwise it is retired. The caller holds the
+	 * write lock.
+	 */
+	private N publish (N node, N published, int level) {
+		if (published != null && node.epoch() < epoch) return published;
+
+		N copy = nodeProvider.create(level);
+		copy.copy(node);
+		copy.copyChilds();
+		if (level > keyLevel) {
+			for (int mask = copy.childMask(); mask != 0; mask &= mask - 1) {
+				int i = Integer.numberOfTrailingZeros(mask);
+				copy.child(i, publish(node.child(i), published != null ? published.child(i) : null, level - 1));
+			}
+			// the copies of the removed children are only read by the older snapshots
+			int removed = published != null ? published.childMask() & ~copy.childMask() : 0;
+			for (; removed != 0; removed &= removed - 1) {
+				retireCopies(published.child(Integer.numberOfTrailingZeros(removed)), level - 1);
+			}
+		}
+		if (published != null) retireNode(published);
+		return copy;
+	}
+
+	/* retires the copies of a snapshot down to the key level, the nodes below belong to the octree */
+	private void retireCopies (N copy, int level) {
+		if (level > keyLevel) {
+			for (int mask = copy.childMask(); mask != 0; mask &= mask - 1) {
+				retireCopies(copy.child(Integer.numberOfTrailingZeros(mask)), level - 1);
+			}
+		}
+		retireNode(copy);
+	}
+
+	/*
+	 * Returns the node ready to be changed. A node with an own bounding box keeps its identity, the snapshots read
+	 * copies of it, so it and its ancestors are only marked for the next snapshot (see publish()). A node below the
+	 * key level which is shared with a snapshot is replaced by a copy and retired. The children are shared by both
+	 * and keep the replaced node as their parent, so the parent of a node of an older epoch is looked up from its node
+	 * of the key level. The parents of the nodes of the current epoch are the attached ones.
+	 */
+	private N writable (N node) {
+		if (node.epoch() >= epoch) return node;
+		// the last snapshot must not be handed out anymore once the nodes it reads are retired
+		modified = true;
+		if (node.hasBoundingBox()) {
+			// the ancestors of a node of the current epoch have been marked with it
+			for (N ancestor = node; ancestor != null && ancestor.epoch() < epoch; ancestor = ancestor.parent()) {
+				ancestor.epoch(epoch);
+			}
+			return node;
+		}
+
+		long key = node.key();
+		N parent = writable(attachedParent(key));
+		N copy = nodeProvider.create(OctreeKey.level(key));
+		copy.copy(node);
+		copy.copyChilds();
+		copy.epoch(epoch);
+		// the keys of the children are cached while their parent is attached, it is recycled later on
+		for (int mask = copy.childMask(); mask != 0; mask &= mask - 1) {
+			copy.child(Integer.numberOfTrailingZeros(mask)).key();
+		}
+		parent.child(OctreeKey.childIndex(key), copy);
+		copy.parent(parent);
+		copy.key(key);
+		if (linearIndex != null) linearIndex.put(key, copy);
+		retireNode(node);
+		return copy;
+	}
+
+	/* parent of the attached node below the key level with the given key, found from the node of the key level */
+	private N attachedParent (long key) {
+		int level = OctreeKey.level(key) + 1;
+		N node = chunkIndex.get(OctreeKey.ancestor(key, keyLevel));
+		for (int l = keyLevel; l > level && node != null; --l) {
+			node = node.child(OctreeKey.childIndex(OctreeKey.ancestor(key, l - 1)));
+		}
+		return node;
+	}
+
 	private void updateListeners (N updateNode, D descriptor) {
 		NodeUpdateData<N, D> updateData = new NodeUpdateData<>();
 		updateData.node = updateNode;
@@ -122,22 +469,586 @@ public class Octree<N extends OctreeNode<N>, D extends OctreeNodeDescriptor> {
 		}
 	}
 
-	private synchronized N processDescriptor (Vector3 v, D descriptor, OctreeCalc calc) {
-		switch (descriptor.getBaseActionType()) {
-		case add:
-			return OctreeNodeTools.addNodeByVector(nodeProvider, rootNode, v, descriptor, calc);
-		case remove:
-			return removeNode(v, descriptor, calc);
-		default:
-			throw new RuntimeException("Unknown Type " + descriptor.getBaseActionType().toString());
+	private int stripe (int x, int y, int z) {
+		return OctreeKey.hash(OctreeKey.encode(keyLevel, x, y, z)) & (STRIPES - 1);
+	}
+
+	private boolean insideRoot (int x, int y, int z) {
+		BoundingBox rootBoundingBox = rootNode.boundingBox();
+		int size = 1 << curLevel;
+		int rx = x - (int) rootBoundingBox.min.x;
+		int ry = y - (int) rootBoundingBox.min.y;
+		int rz = z - (int) rootBoundingBox.min.z;
+		return rx >= 0 && ry >= 0 && rz >= 0 && rx < size && ry < size && rz < size;
+	}
+
+	/* node of the given level containing x, y, z, the uniform node covering it or null */
+	private N find (int x, int y, int z, int level) {
+		if (level <= keyLevel) {
+			// from the node of the key level, its min corner is x, y, z with the lower bits cleared
+			N node = chunkIndex.get(OctreeKey.encode(keyLevel, x, y, z));
+			for (int l = keyLevel; l > level && node != null; --l) {
+				if (node.uniform() != null) return node;
+				if (node.stored()) return level == 0 ? storedLeaf(node, l, x, y, z) : null;
+				if (node.leaf()) return null;
+				int shift = l - 1;
+				node = node.child(((x >> shift) & 1) | ((z >> shift) & 1) << 1 | ((y >> shift) & 1) << 2);
+			}
+			return node;
+		}
+		if (!insideRoot(x, y, z)) return null;
+
+		// relative to the root the child index of each level is one bit of the position
+		BoundingBox rootBoundingBox = rootNode.boundingBox();
+		int rx = x - (int) rootBoundingBox.min.x;
+		int ry = y - (int) rootBoundingBox.min.y;
+		int rz = z - (int) rootBoundingBox.min.z;
+		N node = rootNode;
+		for (int l = curLevel; l > level && node != null; --l) {
+			if (node.uniform() != null) return node;
+			if (node.stored()) return level == 0 ? storedLeaf(node, l, rx, ry, rz) : null;
+			if (node.leaf()) return null;
+			int shift = l - 1;
+			node = node.child(((rx >> shift) & 1) | ((rz >> shift) & 1) << 1 | ((ry >> shift) & 1) << 2);
+		}
+		return node;
+	}
+
+	/* leaf of the cell x, y, z of a stored node, the low bits of the position are relative to its minimum corner */
+	private static <N extends OctreeNode<N>> N storedLeaf (N node, int level, int x, int y, int z) {
+		int mask = (1 << level) - 1;
+		return node.storedLeaf(x & mask, y & mask, z & mask);
+	}
+
+	private N addNode (int x, int y, int z, D descriptor) {
+		structureLock.readLock().lock();
+		try {
+			if (rootNode != null && insideRoot(x, y, z)) {
+				synchronized (chunkLocks[stripe(x, y, z)]) {
+					N node = addNodeInChunk(x, y, z, descriptor);
+					if (node != null) {
+						modified = true;
+						OctreeTools.updateNode(node, descriptor);
+						collapse(node);
+						return node;
+					}
+				}
+			}
+		} finally {
+			structureLock.readLock().unlock();
+		}
+
+		// the node of the key level is missing, so the tree has to be expanded exclusively
+		structureLock.writeLock().lock();
+		try {
+			N node = addNodeFromRoot(x, y, z, descriptor);
+			OctreeTools.updateNode(node, descriptor);
+			collapse(node);
+			return node;
+		} finally {
+			structureLock.writeLock().unlock();
 		}
 	}
 
-	public synchronized N addNode (N node, BaseActionType baseActionType, OctreeCalc calc) {
-		BoundingBox boundingBox = calc.boundingBox();
-		boundingBox.set(node.boundingBox());
-		if (baseActionType == BaseActionType.add) {
-			Vector3 corner = calc.vector();
+	/* the caller holds the write lock */
+	private N addNodeFromRoot (int x, int y, int z, D descriptor) {
+		position.set(x + 0.5f, y + 0.5f, z + 0.5f);
+		expandRootNode(position, BaseActionType.add);
+		modified = true;
+		BoundingBox rootBoundingBox = rootNode.boundingBox();
+		return createPath(rootNode, curLevel, (int) rootBoundingBox.min.x, (int) rootBoundingBox.min.y,
+				(int) rootBoundingBox.min.z, x, y, z, descriptor);
+	}
+
+	private N chunk (int x, int y, int z) {
+		return chunkIndex.get(OctreeKey.encode(keyLevel, x, y, z));
+	}
+
+	/* node of the key level containing x, y, z or null, found in one hash probe */
+	public N getChunk (int x, int y, int z) {
+		structureLock.readLock().lock();
+		try {
+			return chunk(x, y, z);
+		} finally {
+			structureLock.readLock().unlock();
+		}
+	}
+
+	/* adds the nodes of the key level to the list, only those intersecting the bounding box unless it is null */
+	public List<N> getChunks (BoundingBox boundingBox, List<N> result) {
+		structureLock.readLock().lock();
+		try {
+			if (boundingBox == null) return chunkIndex.values(result);
+
+			int size = 1 << keyLevel;
+			int minX = MathUtils.floor(boundingBox.min.x) >> keyLevel;
+			int minY = MathUtils.floor(boundingBox.min.y) >> keyLevel;
+			int minZ = MathUtils.floor(boundingBox.min.z) >> keyLevel;
+			int maxX = MathUtils.floor(boundingBox.max.x) >> keyLevel;
+			int maxY = MathUtils.floor(boundingBox.max.y) >> keyLevel;
+			int maxZ = MathUtils.floor(boundingBox.max.z) >> keyLevel;
+			long cells = (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+			if (cells > chunkIndex.size()) {
+				// a box larger than the indexed area is cheaper to answer from the index itself
+				for (N chunk : chunkIndex.values(new ArrayList<>(chunkIndex.size()))) {
+					BoundingBox chunkBoundingBox = chunk.boundingBox();
+					if (chunkBoundingBox.min.x <= boundingBox.max.x && chunkBoundingBox.max.x >= boundingBox.min.x
+							&& chunkBoundingBox.min.y <= boundingBox.max.y && chunkBoundingBox.max.y >= boundingBox.min.y
+							&& chunkBoundingBox.min.z <= boundingBox.max.z && chunkBoundingBox.max.z >= boundingBox.min.z) {
+						result.add(chunk);
+					}
+				}
+				return result;
+			}
+
+			// the grid cells touching the box, a chunk touching it only on its lower faces is one cell further down
+			for (int cx = minX - 1; cx <= maxX; ++cx) {
+				for (int cy = minY - 1; cy <= maxY; ++cy) {
+					for (int cz = minZ - 1; cz <= maxZ; ++cz) {
+						if ((cx < minX && (cx + 1) * size < boundingBox.min.x)
+								|| (cy < minY && (cy + 1) * size < boundingBox.min.y)
+								|| (cz < minZ && (cz + 1) * size < boundingBox.min.z)) {
+							continue;
+						}
+						N chunk = chunk(cx * size, cy * size, cz * size);
+						if (chunk != null) result.add(chunk);
+					}
+				}
+			}
+			return result;
+		} finally {
+			structureLock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * Applies the edits grouped by their node of the key level. Each group takes the locks once, the ancestors
+	 * above the key level are updated once and the batch listeners get one BatchUpdateData per group with the
+	 * changed region. The IOctreeListeners are not called.
+	 */
+	public void applyBatch (OctreeBatch<N, D> batch) {
+		// the sort key is the Morton code of the chunk followed by the index of the edit
+		int indexBits = Math.min(24, 63 - 3 * (OctreeKey.BITS - keyLevel));
+		int sliceSize = 1 << indexBits;
+		List<BatchUpdateData<N>> updates = new ArrayList<>();
+		for (int start = 0; start < batch.size; start += sliceSize) {
+			int end = Math.min(batch.size, start + sliceSize);
+			long[] order = new long[end - start];
+			for (int i = start; i < end; ++i) {
+				long chunkKey = OctreeKey.encode(keyLevel, batch.x[i], batch.y[i], batch.z[i]);
+				order[i - start] = OctreeKey.morton(chunkKey) << indexBits | (i - start);
+			}
+			Arrays.sort(order);
+
+			for (int from = 0; from < order.length;) {
+				long morton = order[from] >>> indexBits;
+				int to = from + 1;
+				while (to < order.length && (order[to] >>> indexBits) == morton) {
+					++to;
+				}
+				BatchUpdateData<N> updateData = applyGroup(batch, start, order, from, to, indexBits);
+				if (updateData != null) updates.add(updateData);
+				from = to;
+			}
+		}
+
+		for (BatchUpdateData<N> updateData : updates) {
+			for (IOctreeBatchListener<N> listener : batchListenerList) {
+				listener.update(updateData);
+			}
+		}
+	}
+
+	private BatchUpdateData<N> applyGroup (OctreeBatch<N, D> batch, int start, long[] order, int from, int to,
+			int indexBits) {
+		int first = start + (int) (order[from] & ((1L << indexBits) - 1));
+		int x = batch.x[first];
+		int y = batch.y[first];
+		int z = batch.z[first];
+		BatchUpdateData<N> updateData = new BatchUpdateData<>();
+
+		boolean applied = false;
+		structureLock.readLock().lock();
+		try {
+			if (rootNode != null && insideRoot(x, y, z)) {
+				synchronized (chunkLocks[stripe(x, y, z)]) {
+					if (chunk(x, y, z) != null) {
+						applyEdits(batch, start, order, from, to, indexBits, x, y, z, updateData);
+						applied = true;
+					}
+				}
+			}
+		} finally {
+			structureLock.readLock().unlock();
+		}
+
+		if (!applied) {
+			structureLock.writeLock().lock();
+			try {
+				applyEdits(batch, start, order, from, to, indexBits, x, y, z, updateData);
+			} finally {
+				structureLock.writeLock().unlock();
+			}
+		}
+
+		if (updateData.count == 0) return null;
+		if (updateData.node != null && !updateData.node.hasChilds()) {
+			removeEmptyNode(updateData.node, x, y, z);
+		}
+		return updateData;
+	}
+
+	/* the caller holds the lock of the stripe of an existing node of the key level or the write lock */
+	private void applyEdits (OctreeBatch<N, D> batch, int start, long[] order, int from, int to, int indexBits,
+			int chunkX, int chunkY, int chunkZ, BatchUpdateData<N> updateData) {
+		N lastNode = null;
+		D lastDescriptor = null;
+		for (int j = from; j < to; ++j) {
+			int i = start + (int) (order[j] & ((1L << indexBits) - 1));
+			int x = batch.x[i];
+			int y = batch.y[i];
+			int z = batch.z[i];
+			D descriptor = batch.descriptor(i);
+			N node = null;
+			switch (descriptor.getBaseActionType()) {
+			case add:
+				node = rootNode != null && insideRoot(x, y, z) ? addNodeInChunk(x, y, z, descriptor) : null;
+				// only the first edit of a group under the write lock creates the path to the node of the key level
+				if (node == null) node = addNodeFromRoot(x, y, z, descriptor);
+				break;
+			case remove:
+				if (rootNode == null) break;
+				node = splitLeaf(x, y, z);
+				if (node != null) removeNodeInChunk(node, x, y, z);
+				break;
+			default:
+				throw new RuntimeException("Unknown Type " + descriptor.getBaseActionType().toString());
+			}
+
+			batch.nodes[i] = node;
+			if (node == null) continue;
+
+			modified = true;
+			// the ancestors above the key level are updated once for the whole group
+			OctreeTools.updateNode(node, descriptor, keyLevel + 1);
+			if (descriptor.getBaseActionType() == BaseActionType.add) collapse(node);
+			updateData.dirty.ext(x, y, z);
+			updateData.dirty.ext(x + 1, y + 1, z + 1);
+			++updateData.count;
+			lastNode = node;
+			lastDescriptor = descriptor;
+		}
+
+		if (lastNode == null) return;
+		updateData.node = chunk(chunkX, chunkY, chunkZ);
+		if (updateData.node != null) OctreeTools.updateNode(updateData.node.parent(), lastNode, lastDescriptor);
+	}
+
+	/* creates the path below the existing node of the key level, null if there is no such node */
+	private N addNodeInChunk (int x, int y, int z, D descriptor) {
+		if (linearIndex != null) {
+			long key = linearIndex.find(x, y, z);
+			if (key == OctreeKey.NONE) return null;
+			N node = linearIndex.get(key);
+			// a shared node is copied on the path from the node of the key level
+			if (!node.shared()) {
+				return createPath(node, OctreeKey.level(key), OctreeKey.x(key), OctreeKey.y(key), OctreeKey.z(key), x,
+						y, z, descriptor);
+			}
+		}
+
+		N chunk = chunk(x, y, z);
+		if (chunk == null) return null;
+		long key = OctreeKey.encode(keyLevel, x, y, z);
+		return createPath(chunk, keyLevel, OctreeKey.x(key), OctreeKey.y(key), OctreeKey.z(key), x, y, z,
+				descriptor);
+	}
+
+	/* creates the missing nodes from the given node (min corner minX, minY, minZ) down to the leaf of x, y, z */
+	private N createPath (N node, int level, int minX, int minY, int minZ, int x, int y, int z, D descriptor) {
+		for (; level > 0 && node != null; --level) {
+			if (node.stored()) node = unstore(node, level, minX, minY, minZ);
+			if (node.uniform() != null) node = split(node, level);
+			int shift = level - 1;
+			int bitX = ((x - minX) >> shift) & 1;
+			int bitY = ((y - minY) >> shift) & 1;
+			int bitZ = ((z - minZ) >> shift) & 1;
+			int index = bitX | bitZ << 1 | bitY << 2;
+			minX += bitX << shift;
+			minY += bitY << shift;
+			minZ += bitZ << shift;
+
+			N child = node.child(index);
+			if (child != null && child.shared()) {
+				node = writable(node);
+				child = unshare(node, index, child, shift, OctreeKey.encode(shift, x, y, z));
+			}
+			if (child == null) {
+				// only nodes from the key level upwards have an own bounding box (created under the write lock)
+				BoundingBox boundingBox = null;
+				if (shift >= keyLevel) {
+					int size = 1 << shift;
+					min.set(minX, minY, minZ);
+					max.set(minX + size, minY + size, minZ + size);
+					boundingBox = createBoundingBox.set(min, max);
+				}
+				node = writable(node);
+				child = OctreeTools.createChild(nodeProvider, node, level, index, boundingBox, descriptor, stats);
+				child.epoch(epoch);
+				if (level <= keyLevel) child.key(OctreeKey.encode(shift, x, y, z));
+				if (linearIndex != null) linearIndex.put(OctreeKey.encode(shift, x, y, z), child);
+				if (shift == keyLevel) chunkIndex.put(OctreeKey.encode(shift, x, y, z), child);
+			}
+			node = child;
+		}
+		return node != null ? writable(node) : null;
+	}
+
+	/* leaf at x, y, z, the uniform node covering it or null */
+	private N leaf (int x, int y, int z) {
+		if (linearIndex == null) return find(x, y, z, 0);
+
+		long key = linearIndex.find(x, y, z);
+		if (key == OctreeKey.NONE) return null;
+		N node = linearIndex.get(key);
+		if (node.stored()) return storedLeaf(node, OctreeKey.level(key), x, y, z);
+		return OctreeKey.level(key) == 0 || node.uniform() != null ? node : null;
+	}
+
+	/*
+	 * Writable leaf at x, y, z or null, a uniform, stored or shared node on the path is split, unstored or copied.
+	 * The ancestors of the writable leaf are the attached ones (see writable()).
+	 */
+	private N splitLeaf (int x, int y, int z) {
+		N node = leaf(x, y, z);
+		if (node == null) return null;
+		if (node.uniform() == null && !node.shared()) return writable(node);
+		long key = OctreeKey.encode(keyLevel, x, y, z);
+		return createPath(chunk(x, y, z), keyLevel, OctreeKey.x(key), OctreeKey.y(key), OctreeKey.z(key), x, y, z,
+				null);
+	}
+
+	/* replaces a node of a shared subtree by a private copy, its children stay shared */
+	private N unshare (N parent, int index, N node, int level, long key) {
+		N copy = nodeProvider.create(level);
+		copy.copy(node);
+		copy.copyChilds();
+		copy.epoch(epoch);
+		parent.child(index, copy);
+		copy.parent(parent);
+		copy.key(key);
+		if (linearIndex != null) linearIndex.put(key, copy);
+		// the copy takes over the children, the parent refers to the copy instead of the shared node
+		OctreeInterner<N> interner = this.interner;
+		if (interner != null) {
+			for (int mask = copy.childMask(); mask != 0; mask &= mask - 1) {
+				N child = copy.child(Integer.numberOfTrailingZeros(mask));
+				if (child.shared()) interner.retain(child);
+			}
+			interner.release(node);
+		}
+		return copy;
+	}
+
+	/*
+	 * Shares the subtrees below the node of the key level at x, y, z with the equal subtrees interned before. Edits
+	 * of the chunk wait meanwhile, so it is meant for chunks which are not being edited. The references to the
+	 * shared subtrees are released to the interner when their parents are recycled or copied.
+	 */
+	public void deduplicate (int x, int y, int z, OctreeInterner<N> interner) {
+		structureLock.readLock().lock();
+		try {
+			if (rootNode == null || !insideRoot(x, y, z)) return;
+			synchronized (chunkLocks[stripe(x, y, z)]) {
+				N chunk = chunk(x, y, z);
+				if (chunk == null) return;
+				this.interner = interner;
+				long chunkKey = OctreeKey.encode(keyLevel, x, y, z);
+				for (int mask = chunk.childMask(); mask != 0; mask &= mask - 1) {
+					int i = Integer.numberOfTrailingZeros(mask);
+					N child = chunk.child(i);
+					N sharedChild = interner.intern(nodeProvider, child, keyLevel - 1, epoch);
+					if (sharedChild == child) continue;
+
+					modified = true;
+					chunk = writable(chunk);
+					chunk.child(i, sharedChild);
+					// the shared subtree has the same nodes, but its child arrays may have other sizes
+					stats.removeSubtree(child, keyLevel - 1);
+					stats.addSubtree(sharedChild, keyLevel - 1);
+					if (linearIndex != null) {
+						long key = OctreeKey.child(chunkKey, i);
+						linearIndex.removeSubtree(child, key);
+						linearIndex.addSubtree(sharedChild, key);
+					}
+				}
+			}
+		} finally {
+			structureLock.readLock().unlock();
+		}
+	}
+
+	/* replaces the children of a uniform node by 8 nodes of the same content */
+	private N split (N node, int level) {
+		node = writable(node);
+		N content = node.uniform();
+		long key = node.key();
+		int slots = OctreeStats.slots(node);
+		node.initChilds(nodeProvider.createArray(level - 1, 8));
+		stats.childsChanged(node, slots);
+		stats.uniformChanged(level, -1);
+		for (int i = 0; i < 8; i++) {
+			N child = nodeProvider.create(level - 1);
+			if (child.leaf()) {
+				child.copy(content);
+			} else {
+				child.uniform(content);
+			}
+			node.child(i, child);
+			child.parent(node);
+			child.epoch(epoch);
+			child.key(OctreeKey.child(key, i));
+			if (linearIndex != null) linearIndex.put(OctreeKey.child(key, i), child);
+			// a uniform child is summarized on its own, the updates only reach the nodes on the path of an edit
+			if (!child.leaf()) child.update(child, null);
+			stats.add(child, level - 1);
+		}
+		return node;
+	}
+
+	/*
+	 * Replaces the store of a stored node by the subtree of its leaves. The leaves handed out by the store are shared,
+	 * so every cell gets a leaf of its own with the same content.
+	 */
+	private N unstore (N node, int level, int minX, int minY, int minZ) {
+		int size = 1 << level;
+		List<N> contents = new ArrayList<>();
+		List<int[]> cells = new ArrayList<>();
+		for (int y = 0; y < size; ++y) {
+			for (int z = 0; z < size; ++z) {
+				for (int x = 0; x < size; ++x) {
+					N content = node.storedLeaf(x, y, z);
+					if (content == null) continue;
+					contents.add(content);
+					cells.add(new int[] { minX + x, minY + y, minZ + z });
+				}
+			}
+		}
+
+		node = writable(node);
+		node.dropStore();
+		for (int i = 0; i < contents.size(); ++i) {
+			int[] cell = cells.get(i);
+			N leaf = createPath(node, level, minX, minY, minZ, cell[0], cell[1], cell[2], null);
+			leaf.copy(contents.get(i));
+			leaf.key(OctreeKey.encode(0, cell[0], cell[1], cell[2]));
+		}
+		OctreeTools.updateSubtree(node, null);
+		return node;
+	}
+
+	/* collapses the ancestors of the added leaf below the key level whose leaves all have the same content */
+	private void collapse (N leaf) {
+		N node = leaf.parent();
+		for (int level = 1; level < keyLevel && node != null; ++level) {
+			N content = OctreeTools.uniformContent(node);
+			if (content == null) return;
+
+			node = writable(node);
+			if (linearIndex != null) {
+				long key = node.key();
+				for (int i = 0; i < 8; i++) {
+					linearIndex.remove(OctreeKey.child(key, i));
+				}
+			}
+			for (int i = 0; i < 8; i++) {
+				stats.remove(node.child(i), level - 1);
+			}
+			int slots = OctreeStats.slots(node);
+			node.initChilds(null);
+			node.uniform(content);
+			stats.childsChanged(node, slots);
+			stats.uniformChanged(level, 1);
+			node = node.parent();
+		}
+	}
+
+	private N removeNode (int x, int y, int z, D descriptor) {
+		N removedNode;
+		N emptyNode;
+		structureLock.readLock().lock();
+		try {
+			if (rootNode == null) return null;
+			synchronized (chunkLocks[stripe(x, y, z)]) {
+				removedNode = splitLeaf(x, y, z);
+				if (removedNode == null) return null;
+				modified = true;
+				emptyNode = removeNodeInChunk(removedNode, x, y, z);
+				OctreeTools.updateNode(removedNode, descriptor);
+			}
+		} finally {
+			structureLock.readLock().unlock();
+		}
+
+		if (emptyNode != null) {
+			removeEmptyNode(emptyNode, x, y, z);
+		}
+		return removedNode;
+	}
+
+	/* removes the leaf and its empty ancestors below the key level, returns the node of the key level if empty */
+	private N removeNodeInChunk (N removedNode, int x, int y, int z) {
+		long key = OctreeKey.encode(0, x, y, z);
+		N node = removedNode;
+		for (int level = 0; level < keyLevel; ++level) {
+			writable(node.parent());
+			OctreeTools.removeChild(node);
+			stats.remove(node, level);
+			if (linearIndex != null) linearIndex.remove(key);
+			if (node.parent().hasChilds()) return null;
+
+			node = node.parent();
+			key = OctreeKey.parent(key);
+		}
+		return node.parent() != null ? node : null;
+	}
+
+	private void removeEmptyNode (N node, int x, int y, int z) {
+		structureLock.writeLock().lock();
+		try {
+			// the node may have been filled again or detached in the meantime
+			if (node.hasChilds() || node.parent() == null || node.parent().childIndex(node) < 0) return;
+
+			writable(node.parent());
+			long key = OctreeKey.encode(keyLevel, x, y, z);
+			if (linearIndex != null && linearIndex.get(key) == node) linearIndex.remove(key);
+			if (chunkIndex.get(key) == node) chunkIndex.remove(key);
+			modified = true;
+			OctreeTools.removeNode(node, keyLevel, null, stats);
+		} finally {
+			structureLock.writeLock().unlock();
+		}
+	}
+
+	public N addNode (N node, BaseActionType baseActionType) {
+		structureLock.writeLock().lock();
+		try {
+			return addNodeExclusive(node, baseActionType);
+		} finally {
+			structureLock.writeLock().unlock();
+		}
+	}
+
+	private N addNodeExclusive (N node, BaseActionType baseActionType) {
+		modified = true;
+		node.epoch(epoch);
+		if (baseActionType != BaseActionType.add) return null;
+
+		OctreeScratch scratch = OctreeScratch.get();
+		long mark = scratch.mark();
+		try {
+			BoundingBox boundingBox = scratch.boundingBox().set(node.boundingBox());
+			Vector3 corner = scratch.vector();
 			expandRootNode(boundingBox.getCorner000(corner), baseActionType);
 			expandRootNode(boundingBox.getCorner100(corner), baseActionType);
 			expandRootNode(boundingBox.getCorner001(corner), baseActionType);
@@ -147,30 +1058,290 @@ public class Octree<N extends OctreeNode<N>, D extends OctreeNodeDescriptor> {
 			expandRootNode(boundingBox.getCorner011(corner), baseActionType);
 			expandRootNode(boundingBox.getCorner111(corner), baseActionType);
 
-			return OctreeNodeTools.addNodeByBoundingBox(this, node, null, calc);
+			long key = OctreeKey.NONE;
+			int level = nodeProvider.levelIndex(node.getClass());
+			if (linearIndex != null && level <= keyLevel) {
+				key = OctreeKey.encode(level, (int) boundingBox.min.x, (int) boundingBox.min.y,
+						(int) boundingBox.min.z);
+				// a node attached at the same position replaces the former subtree
+				N replacedNode = linearIndex.get(key);
+				if (replacedNode != null && replacedNode != node) {
+					linearIndex.removeSubtree(replacedNode, key);
+				}
+			}
+
+			N replacedChunks = null;
+			long chunksKey = OctreeKey.NONE;
+			if (level >= keyLevel) {
+				chunksKey = OctreeKey.encode(level, (int) boundingBox.min.x, (int) boundingBox.min.y,
+						(int) boundingBox.min.z);
+				replacedChunks = find((int) boundingBox.min.x, (int) boundingBox.min.y, (int) boundingBox.min.z, level);
+			}
+
+			N addedNode = OctreeNodeTools.addNodeByBoundingBox(this, node, null);
+			if (addedNode != null) {
+				// the ancestors with an own bounding box are changed in place and marked for the next snapshot
+				N parent = addedNode.parent();
+				while (parent != null && !parent.hasBoundingBox()) {
+					parent = parent.parent();
+				}
+				if (parent != null) writable(parent);
+				OctreeTools.updateSubtree(addedNode, null);
+				OctreeTools.updateNode(addedNode.parent(), addedNode, null);
+			}
+			if (addedNode != null && key != OctreeKey.NONE) {
+				linearIndex.addSubtree(addedNode, key);
+			}
+			if (addedNode != null && chunksKey != OctreeKey.NONE) {
+				if (replacedChunks != null && replacedChunks != addedNode) {
+					indexChunks(replacedChunks, level, chunksKey, false);
+				}
+				indexChunks(addedNode, level, chunksKey, true);
+			}
+			return addedNode;
+		} finally {
+			scratch.release(mark);
+		}
+	}
+
+	/* adds or removes the nodes of the key level of the subtree of the given level and key to the chunk index */
+	private void indexChunks (N node, int level, long key, boolean add) {
+		if (node == null || level < keyLevel) return;
+		if (level == keyLevel) {
+			if (add) {
+				chunkIndex.put(key, node);
+			} else if (chunkIndex.get(key) == node) {
+				chunkIndex.remove(key);
+			}
+			return;
+		}
+		for (int mask = node.childMask(); mask != 0; mask &= mask - 1) {
+			int i = Integer.numberOfTrailingZeros(mask);
+			indexChunks(node.child(i), level - 1, OctreeKey.child(key, i), add);
+		}
+	}
+
+	public void removeNode (N node, INodeHandler<N> nodeHandler) {
+		structureLock.writeLock().lock();
+		try {
+			removeNodeExclusive(node, nodeHandler);
+		} finally {
+			structureLock.writeLock().unlock();
+		}
+	}
+
+	private void removeNodeExclusive (N node, INodeHandler<N> nodeHandler) {
+		modified = true;
+		int level = level(node);
+		if (level < 0) {
+			OctreeTools.removeNode(node, level, nodeHandler, stats);
+		} else {
+			removeIndexed(node, level, key(node, level), nodeHandler);
 		}
+		// the detached node keeps its parent, the ancestors are updated without it
+		OctreeTools.updateNode(node.parent(), node, null);
+	}
+
+	/* removes the node and its empty ancestors from the tree and from the indices, the caller holds the write lock */
+	private void removeIndexed (N node, int level, long nodeKey, INodeHandler<N> nodeHandler) {
+		// a parent with an own bounding box is changed in place, the ones below the key level are writable already
+		if (node.hasBoundingBox() && node.parent() != null) writable(node.parent());
+		if (linearIndex != null && level <= keyLevel) linearIndex.removeSubtree(node, nodeKey);
+		indexChunks(node, level, nodeKey, false);
 
-		return null;
+		// the empty ancestors which are removed as well are passed to the handler one level after another
+		OctreeTools.removeNode(node, level, new INodeHandler<N>() {
+			private long key = nodeKey;
+			private int removedLevel = level;
+
+			@Override
+			public void process (N removedNode) {
+				if (removedNode != node) {
+					key = OctreeKey.parent(key);
+					++removedLevel;
+					if (linearIndex != null) linearIndex.remove(key);
+					indexChunks(removedNode, removedLevel, key, false);
+				}
+				if (nodeHandler != null) nodeHandler.process(removedNode);
+			}
+		}, stats);
 	}
 
-	public N removeNode (Vector3 v, D descriptor, OctreeCalc calc) {
+	public N removeNode (Vector3 v, D descriptor) {
 		OctreeTools.adjustVector(v);
 
-		N lastNode = null;
-		N currentNode = rootNode;
-		for (int level = curLevel; level > 0 && currentNode != null; --level) {
-			lastNode = currentNode;
-			currentNode = OctreeTools.contains(currentNode, v, calc);
+		structureLock.writeLock().lock();
+		try {
+			if (rootNode == null) return null;
+			N currentNode = splitLeaf(MathUtils.floor(v.x), MathUtils.floor(v.y), MathUtils.floor(v.z));
+
+			// nothing to remove if the path ends above the leaf level
+			if (currentNode == null) {
+				return null;
+			}
+
+			modified = true;
+			writable(currentNode.parent());
+			removeIndexed(currentNode, 0, OctreeKey.encode(0, MathUtils.floor(v.x), MathUtils.floor(v.y),
+					MathUtils.floor(v.z)), null);
+			OctreeTools.updateNode(currentNode.parent(), currentNode, descriptor);
+			return currentNode;
+		} finally {
+			structureLock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Removes the leaves whose cells lie completely inside the bounding box. A subtree inside the box is detached in
+	 * one step, one crossing its border is clipped. The nodes clipped off which are neither shared with a snapshot
+	 * nor with other parents are returned to the node provider at once, the ones shared with a snapshot are retired.
+	 * The detached nodes of the key level and their empty ancestors are retired with their subtrees after the batch
+	 * listeners have seen them, like evicted chunks. The batch listeners get one BatchUpdateData per changed node of
+	 * the key level, the IOctreeListeners are not called. Returns the number of removed leaves.
+	 */
+	public long removeRange (BoundingBox boundingBox) {
+		int[] range = { MathUtils.ceil(boundingBox.min.x), MathUtils.ceil(boundingBox.min.y),
+				MathUtils.ceil(boundingBox.min.z), MathUtils.floor(boundingBox.max.x), MathUtils.floor(boundingBox.max.y),
+				MathUtils.floor(boundingBox.max.z) };
+		if (range[0] >= range[3] || range[1] >= range[4] || range[2] >= range[5]) return 0;
+
+		List<BatchUpdateData<N>> updates = new ArrayList<>();
+		List<N> freed = new ArrayList<>();
+		List<N> detached = new ArrayList<>();
+		long removed = 0;
+		structureLock.writeLock().lock();
+		try {
+			if (rootNode == null) return 0;
+			for (N chunk : getChunks(boundingBox, new ArrayList<>())) {
+				BoundingBox chunkBoundingBox = chunk.boundingBox();
+				long key = OctreeKey.encode(keyLevel, (int) chunkBoundingBox.min.x, (int) chunkBoundingBox.min.y,
+						(int) chunkBoundingBox.min.z);
+				if (!overlaps(key, range)) continue;
+
+				BatchUpdateData<N> updateData = new BatchUpdateData<>();
+				updateData.node = chunk;
+				if (inside(key, range)) {
+					updateData.count = (int) leaves(chunk, keyLevel);
+					// the chunk stays intact until its readers are done with it, it is retired with its subtree
+					removeIndexed(chunk, keyLevel, key, detached::add);
+					OctreeTools.updateNode(chunk.parent(), chunk, null);
+				} else {
+					N writableChunk = writable(chunk);
+					if (writableChunk.stored()) {
+						writableChunk = unstore(writableChunk, keyLevel, OctreeKey.x(key), OctreeKey.y(key),
+								OctreeKey.z(key));
+					}
+					updateData.count = (int) clip(writableChunk, keyLevel, key, range, freed);
+					if (updateData.count == 0) continue;
+					if (!chunk.hasChilds()) removeIndexed(chunk, keyLevel, key, detached::add);
+					OctreeTools.updateNode(chunk, chunk, null);
+				}
+
+				int size = OctreeKey.size(key);
+				updateData.dirty.set(
+						min.set(Math.max(range[0], OctreeKey.x(key)), Math.max(range[1], OctreeKey.y(key)),
+								Math.max(range[2], OctreeKey.z(key))),
+						max.set(Math.min(range[3], OctreeKey.x(key) + size), Math.min(range[4], OctreeKey.y(key) + size),
+								Math.min(range[5], OctreeKey.z(key) + size)));
+				updates.add(updateData);
+				removed += updateData.count;
+			}
+			if (removed > 0) modified = true;
+		} finally {
+			structureLock.writeLock().unlock();
 		}
 
-		if (currentNode == null && lastNode != null) {
-			currentNode = lastNode;
+		if (!freed.isEmpty()) nodeProvider.free(freed);
+		for (BatchUpdateData<N> updateData : updates) {
+			for (IOctreeBatchListener<N> listener : batchListenerList) {
+				listener.update(updateData);
+			}
+		}
+		for (N node : detached) {
+			retire(node);
 		}
+		reclaim();
+		return removed;
+	}
 
-		lastNode = currentNode;
+	/* removes the leaves below the writable node inside the range, returns their number */
+	private long clip (N node, int level, long key, int[] range, List<N> freed) {
+		long removed = 0;
+		for (int mask = node.childMask(); mask != 0; mask &= mask - 1) {
+			int i = Integer.numberOfTrailingZeros(mask);
+			long childKey = OctreeKey.child(key, i);
+			if (!overlaps(childKey, range)) continue;
 
-		OctreeTools.removeNode(currentNode, null);
-		return lastNode;
+			N child = node.child(i);
+			if (!child.leaf() && !inside(childKey, range)) {
+				child = child.shared() ? unshare(node, i, child, level - 1, childKey) : writable(child);
+				if (child.uniform() != null) child = split(child, level - 1);
+				removed += clip(child, level - 1, childKey, range, freed);
+				if (child.hasChilds()) {
+					child.update(child, null);
+					continue;
+				}
+			} else {
+				removed += leaves(child, level - 1);
+			}
+			node.child(i, null);
+			stats.removeSubtree(child, level - 1);
+			if (linearIndex != null) linearIndex.removeSubtree(child, childKey);
+			recycle(child, freed);
+		}
+		return removed;
 	}
 
+	/* collects the detached nodes of the subtree which are read by nobody else, children before their parent */
+	private void recycle (N node, List<N> freed) {
+		if (node.shared()) {
+			OctreeInterner<N> interner = this.interner;
+			if (interner != null) interner.release(node);
+			return;
+		}
+		if (node.epoch() < epoch) {
+			retire(node);
+			return;
+		}
+		for (int mask = node.childMask(); mask != 0; mask &= mask - 1) {
+			recycle(node.child(Integer.numberOfTrailingZeros(mask)), freed);
+		}
+		freed.add(node);
+	}
+
+	private static long leaves (OctreeNode<?> node, int level) {
+		if (node.leaf()) return 1;
+		if (node.uniform() != null) return 1L << (3 * level);
+		long count = 0;
+		if (node.stored()) {
+			int size = 1 << level;
+			for (int y = 0; y < size; ++y) {
+				for (int z = 0; z < size; ++z) {
+					for (int x = 0; x < size; ++x) {
+						if (node.storedLeaf(x, y, z) != null) ++count;
+					}
+				}
+			}
+			return count;
+		}
+		for (int mask = node.childMask(); mask != 0; mask &= mask - 1) {
+			count += leaves(node.child(Integer.numberOfTrailingZeros(mask)), level - 1);
+		}
+		return count;
+	}
+
+	/* range holds the minimum and the exclusive maximum cell coordinates */
+	private static boolean overlaps (long key, int[] range) {
+		int size = OctreeKey.size(key);
+		return OctreeKey.x(key) < range[3] && OctreeKey.x(key) + size > range[0] && OctreeKey.y(key) < range[4]
+				&& OctreeKey.y(key) + size > range[1] && OctreeKey.z(key) < range[5]
+				&& OctreeKey.z(key) + size > range[2];
+	}
+
+	private static boolean inside (long key, int[] range) {
+		int size = OctreeKey.size(key);
+		return OctreeKey.x(key) >= range[0] && OctreeKey.x(key) + size <= range[3] && OctreeKey.y(key) >= range[1]
+				&& OctreeKey.y(key) + size <= range[4] && OctreeKey.z(key) >= range[2]
+				&& OctreeKey.z(key) + size <= range[5];
+	}
 }
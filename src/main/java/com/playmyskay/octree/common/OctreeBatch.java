@@ -0,0 +1,53 @@
+package com.playmyskay.octree.common;
+
+import java.util.Arrays;
+
+/*
+ * Edits for Octree.applyBatch, kept in flat arrays. After the batch has been applied node(i) is the node which has
+ * been set or removed by edit i, null if nothing changed.
+ */
+public class OctreeBatch<N extends OctreeNode<N>, D extends OctreeNodeDescriptor> {
+	int size = 0;
+	int[] x = new int[64];
+	int[] y = new int[64];
+	int[] z = new int[64];
+	Object[] descriptors = new Object[64];
+	Object[] nodes = new Object[64];
+
+	public void add (int x, int y, int z, D descriptor) {
+		if (size == this.x.length) {
+			int capacity = size * 2;
+			this.x = Arrays.copyOf(this.x, capacity);
+			this.y = Arrays.copyOf(this.y, capacity);
+			this.z = Arrays.copyOf(this.z, capacity);
+			descriptors = Arrays.copyOf(descriptors, capacity);
+			nodes = Arrays.copyOf(nodes, capacity);
+		}
+		this.x[size] = x;
+		this.y[size] = y;
+		this.z[size] = z;
+		descriptors[size] = descriptor;
+		nodes[size] = null;
+		++size;
+	}
+
+	public int size () {
+		return size;
+	}
+
+	@SuppressWarnings("unchecked")
+	public D descriptor (int i) {
+		return (D) descriptors[i];
+	}
+
+	@SuppressWarnings("unchecked")
+	public N node (int i) {
+		return (N) nodes[i];
+	}
+
+	public void clear () {
+		Arrays.fill(descriptors, 0, size, null);
+		Arrays.fill(nodes, 0, size, null);
+		size = 0;
+	}
+}
@@ -0,0 +1,190 @@
+package com.playmyskay.octree.common;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Hash consing of subtrees: structurally equal subtrees are replaced by one shared instance, so the octree becomes a
+ * directed acyclic graph. The subtrees are interned bottom-up, so two inner nodes are equal if their children are
+ * the same instances. Interned nodes are marked as shared and are never changed afterwards.
+ *
+ * An interned node counts the parents it has been handed out to and the ones of the octree which took over its
+ * references (see release()). A node without references is forgotten, like the least recently used node once the
+ * table holds maxSize nodes. A forgotten node stays shared for the parents which still read it.
+ */
+public class OctreeInterner<N extends OctreeNode<N>> {
+	public static final int MAX_SIZE = 1 << 20;
+
+	private final int maxSize;
+	// the interned nodes by their signature, the least recently used one first
+	private Map<Signature, N> nodes = new LinkedHashMap<>(16, 0.75f, true);
+	// the signatures of the interned nodes by identity, they hold the references
+	private Map<N, Signature> signatures = new IdentityHashMap<>();
+	private long savedNodes;
+	private long savedBytes;
+
+	public OctreeInterner() {
+		this(MAX_SIZE);
+	}
+
+	public OctreeInterner(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	private class Signature {
+		private N node;
+		private int level;
+		private int hash;
+		// parents holding the interned node
+		private int references;
+
+		private Signature(N node, int level) {
+			this.node = node;
+			this.level = level;
+			if (node.leaf()) {
+				hash = node.contentHash();
+			} else if (node.uniform() != null) {
+				hash = 31 * level + node.uniform().contentHash();
+			} else {
+				hash = 31 * level + node.childMask();
+				for (int mask = node.childMask(); mask != 0; mask &= mask - 1) {
+					hash = 31 * hash + System.identityHashCode(node.child(Integer.numberOfTrailingZeros(mask)));
+				}
+			}
+		}
+
+		@Override
+		public int hashCode () {
+			return hash;
+		}
+
+		@Override
+		public boolean equals (Object object) {
+			@SuppressWarnings("unchecked")
+			Signature other = (Signature) object;
+			if (other.level != level || other.hash != hash) return false;
+			N otherNode = other.node;
+			if (node.leaf() || otherNode.leaf()) {
+				return node.leaf() && otherNode.leaf() && node.sameContent(otherNode);
+			}
+			if (node.uniform() != null || otherNode.uniform() != null) {
+				return node.uniform() != null && otherNode.uniform() != null
+						&& node.uniform().sameContent(otherNode.uniform());
+			}
+			if (node.childMask() != otherNode.childMask()) return false;
+			for (int mask = node.childMask(); mask != 0; mask &= mask - 1) {
+				int i = Integer.numberOfTrailingZeros(mask);
+				if (node.child(i) != otherNode.child(i)) return false;
+			}
+			return true;
+		}
+	}
+
+	/*
+	 * Returns the shared instance of the subtree of the given level, which gets a reference for the parent of the
+	 * node. The subtree itself is not changed, if only some of its children are replaced the result is a new node
+	 * created in the given epoch.
+	 */
+	public synchronized N intern (IOctreeNodeProvider<N> nodeProvider, N node, int level, int epoch) {
+		if (node == null || node.shared()) return node;
+
+		N candidate = node;
+		if (!node.leaf() && node.uniform() == null) {
+			for (int mask = node.childMask(); mask != 0; mask &= mask - 1) {
+				int i = Integer.numberOfTrailingZeros(mask);
+				N child = node.child(i);
+				N sharedChild = intern(nodeProvider, child, level - 1, epoch);
+				if (sharedChild == child) continue;
+				if (candidate == node) {
+					candidate = nodeProvider.create(level);
+					candidate.copy(node);
+					candidate.copyChilds();
+					candidate.epoch(epoch);
+					// only the root has no parent
+					candidate.parent(node.parent());
+				}
+				candidate.child(i, sharedChild);
+			}
+		}
+
+		Signature signature = new Signature(candidate, level);
+		N sharedNode = nodes.get(signature);
+		if (sharedNode == null) {
+			candidate.shared(true);
+			nodes.put(signature, candidate);
+			signatures.put(candidate, signature);
+			sharedNode = candidate;
+		} else {
+			// the candidate is dropped with the references it holds
+			releaseChilds(candidate);
+		}
+		++signatures.get(sharedNode).references;
+		while (nodes.size() > maxSize) {
+			forget(nodes.values().iterator().next());
+		}
+
+		// the node is dropped, the copy replacing it costs as much as the node
+		if (sharedNode != node && sharedNode != candidate) {
+			++savedNodes;
+			savedBytes += bytes(node);
+		}
+		return sharedNode;
+	}
+
+	/* adds a reference to the interned node, e.g. for a copy of its parent */
+	public synchronized void retain (N node) {
+		Signature signature = signatures.get(node);
+		if (signature != null) ++signature.references;
+	}
+
+	/*
+	 * Drops a reference to the interned node, e.g. of a recycled parent. A node without references is forgotten and
+	 * drops the references to its children.
+	 */
+	public synchronized void release (N node) {
+		Signature signature = signatures.get(node);
+		if (signature != null && --signature.references == 0) forget(node);
+	}
+
+	private void forget (N node) {
+		nodes.remove(signatures.remove(node));
+		releaseChilds(node);
+	}
+
+	private void releaseChilds (N node) {
+		if (node.leaf()) return;
+		for (int mask = node.childMask(); mask != 0; mask &= mask - 1) {
+			N child = node.child(Integer.numberOfTrailingZeros(mask));
+			if (child.shared()) release(child);
+		}
+	}
+
+	private static int bytes (OctreeNode<?> node) {
+		int slots = OctreeStats.slots(node);
+		if (slots == 0) return OctreeStats.NODE_BYTES;
+		return OctreeStats.NODE_BYTES + OctreeStats.ARRAY_BYTES + slots * OctreeStats.SLOT_BYTES;
+	}
+
+	/* number of interned subtrees */
+	public synchronized int size () {
+		return nodes.size();
+	}
+
+	public synchronized long savedNodes () {
+		return savedNodes;
+	}
+
+	/* estimated like OctreeStats.bytes() */
+	public synchronized long savedBytes () {
+		return savedBytes;
+	}
+
+	/* forgets the interned subtrees, the nodes stay shared */
+	public synchronized void clear () {
+		nodes.clear();
+		signatures.clear();
+		savedNodes = 0;
+		savedBytes = 0;
+	}
+}
@@ -0,0 +1,104 @@
+package com.playmyskay.octree.common;
+
+/*
+ * Packs the level and the Morton interleaved integer coordinates of an octree node into one long.
+ *
+ * Only nodes that are aligned on their own size can be addressed (see Octree.keyLevel). The bit order of the
+ * interleaving follows the child index order (x = 1, z = 2, y = 4), so the key of a child is the key of its parent
+ * shifted by three bits plus the child index.
+ */
+public class OctreeKey {
+	public static final long NONE = -1L;
+
+	public static final int BITS = 19;
+	public static final int BIAS = 1 << (BITS - 1);
+	public static final int LEVEL_SHIFT = BITS * 3;
+	public static final int LEVEL_MAX = 31;
+
+	private static final long MORTON_MASK = (1L << LEVEL_SHIFT) - 1L;
+
+	private static long spread (int v) {
+		long x = v & ((1L << BITS) - 1L);
+		x = (x | x << 32) & 0x1f00000000ffffL;
+		x = (x | x << 16) & 0x1f0000ff0000ffL;
+		x = (x | x << 8) & 0x100f00f00f00f00fL;
+		x = (x | x << 4) & 0x10c30c30c30c30c3L;
+		x = (x | x << 2) & 0x1249249249249249L;
+		return x;
+	}
+
+	private static int compact (long x) {
+		x &= 0x1249249249249249L;
+		x = (x ^ (x >> 2)) & 0x10c30c30c30c30c3L;
+		x = (x ^ (x >> 4)) & 0x100f00f00f00f00fL;
+		x = (x ^ (x >> 8)) & 0x1f0000ff0000ffL;
+		x = (x ^ (x >> 16)) & 0x1f00000000ffffL;
+		x = (x ^ (x >> 32)) & 0x1fffffL;
+		return (int) x;
+	}
+
+	/* key of the node at the given level containing the world position x, y, z */
+	public static long encode (int level, int x, int y, int z) {
+		long morton = spread((x + BIAS) >> level) | spread((z + BIAS) >> level) << 1
+				| spread((y + BIAS) >> level) << 2;
+		return ((long) level << LEVEL_SHIFT) | morton;
+	}
+
+	public static int hash (long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	public static int level (long key) {
+		return (int) (key >>> LEVEL_SHIFT);
+	}
+
+	public static long morton (long key) {
+		return key & MORTON_MASK;
+	}
+
+	/* world position of the min corner */
+	public static int x (long key) {
+		return (compact(morton(key)) << level(key)) - BIAS;
+	}
+
+	public static int y (long key) {
+		return (compact(morton(key) >>> 2) << level(key)) - BIAS;
+	}
+
+	public static int z (long key) {
+		return (compact(morton(key) >>> 1) << level(key)) - BIAS;
+	}
+
+	public static int size (long key) {
+		return 1 << level(key);
+	}
+
+	public static long parent (long key) {
+		return ((long) (level(key) + 1) << LEVEL_SHIFT) | (morton(key) >>> 3);
+	}
+
+	public static long ancestor (long key, int level) {
+		int shift = (level - level(key)) * 3;
+		return ((long) level << LEVEL_SHIFT) | (morton(key) >>> shift);
+	}
+
+	public static long child (long key, int index) {
+		return ((long) (level(key) - 1) << LEVEL_SHIFT) | (morton(key) << 3) | index;
+	}
+
+	public static int childIndex (long key) {
+		return (int) (key & 7L);
+	}
+
+	/* child index of the position x, y, z inside a node of the given level */
+	public static int childIndex (int level, int x, int y, int z) {
+		int shift = level - 1;
+		return ((x >> shift) & 1) | ((z >> shift) & 1) << 1 | ((y >> shift) & 1) << 2;
+	}
+
+	public static boolean aligned (int level, int x, int y, int z) {
+		int mask = (1 << level) - 1;
+		return (x & mask) == 0 && (y & mask) == 0 && (z & mask) == 0;
+	}
+}
@@ -1,17 +1,30 @@
 package com.playmyskay.octree.common;
 
+import java.util.Arrays;
+
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.BoundingBox;
 
 public abstract class OctreeNode<N extends OctreeNode<N>> {
-	static private BoundingBox rootBoundingBox = new BoundingBox();
-
 	private N parent;
+	// OctreeKey of a node without an own bounding box, see key()
+	private long key = OctreeKey.NONE;
+	// epoch of the octree when the node was created or changed, nodes of older epochs are shared with snapshots
+	private int epoch;
+	// leaf all leaves of this collapsed subtree are equal to, see uniform()
+	private N uniform;
+	// part of a subtree shared by several parents, see shared()
+	private boolean shared;
 
 	public abstract void update (N node, OctreeNodeDescriptor descriptor);
 
-	public boolean contains (Vector3 v, OctreeCalc calc) {
-		return boundingBox(calc).contains(v);
+	public boolean contains (Vector3 v) {
+		if (hasBoundingBox()) return boundingBox().contains(v);
+		OctreeScratch scratch = OctreeScratch.get();
+		long mark = scratch.mark();
+		boolean contains = OctreeNodeTools.boundingBox(scratch.boundingBox(), this).contains(v);
+		scratch.release(mark);
+		return contains;
 	}
 
 	public N parent () {
@@ -19,9 +32,130 @@ public abstract class OctreeNode<N extends OctreeNode<N>> {
 	}
 
 	public N parent (N parent) {
+		key = OctreeKey.NONE;
 		return this.parent = parent;
 	}
 
+	/*
+	 * Key of the node derived from the nearest ancestor with an own bounding box. It is computed once and cached
+	 * until the node gets another parent, so the bounds of any node are available without walking up the tree.
+	 */
+	public long key () {
+		if (shared) return OctreeKey.NONE;
+		if (key != OctreeKey.NONE || parent == null) return key;
+		int index = parent.childIndex(this);
+		if (index < 0) return OctreeKey.NONE;
+
+		long parentKey;
+		if (parent.hasBoundingBox()) {
+			BoundingBox parentBoundingBox = parent.boundingBox();
+			parentKey = OctreeKey.encode(Integer.numberOfTrailingZeros((int) parentBoundingBox.getWidth()),
+					(int) parentBoundingBox.min.x, (int) parentBoundingBox.min.y, (int) parentBoundingBox.min.z);
+		} else {
+			parentKey = parent.key();
+		}
+		if (parentKey == OctreeKey.NONE) return OctreeKey.NONE;
+
+		return key = OctreeKey.child(parentKey, index);
+	}
+
+	public void key (long key) {
+		this.key = key;
+	}
+
+	public int epoch () {
+		return epoch;
+	}
+
+	public void epoch (int epoch) {
+		this.epoch = epoch;
+	}
+
+	/* copies the content of the given node, the child array is shared */
+	public void copy (N node) {
+		OctreeNode<N> other = node;
+		if (!leaf()) childs(other.childs());
+		childMask = other.childMask;
+		key = other.key;
+		uniform = other.uniform;
+	}
+
+	public void copyChilds () {
+		if (leaf()) return;
+		N[] childs = childs();
+		if (childs != null) childs(Arrays.copyOf(childs, childs.length));
+	}
+
+	/*
+	 * A uniform node has no children but stands for the complete subtree below it, every leaf of which has the same
+	 * content as the returned leaf. It is split again by the Octree when an edit lands inside.
+	 */
+	public N uniform () {
+		return uniform;
+	}
+
+	public void uniform (N leaf) {
+		this.uniform = leaf;
+	}
+
+	/* leaves with the same content can be collapsed into a uniform node */
+	public boolean sameContent (N node) {
+		return false;
+	}
+
+	/* hash of the content of a leaf, equal for leaves with the same content */
+	public int contentHash () {
+		return System.identityHashCode(this);
+	}
+
+	/*
+	 * A shared node belongs to a subtree interned by an OctreeInterner and may be reachable from several parents.
+	 * Neither its parent nor its key are meaningful and it is never changed, the Octree replaces it by a copy
+	 * before an edit below it.
+	 */
+	public boolean shared () {
+		return shared;
+	}
+
+	public void shared (boolean shared) {
+		this.shared = shared;
+	}
+
+	/* a detached node in use outside the octree, e.g. by a renderer, is not recycled by Octree.reclaim() */
+	public boolean inUse () {
+		return false;
+	}
+
+	/*
+	 * A stored node has no children but keeps the leaves below it in a compact store of its own. Readers ask it for
+	 * the leaf of a cell, the Octree moves the leaves into children before an edit lands inside. The store is never
+	 * changed once the node is attached, so snapshots sharing it stay valid.
+	 */
+	public boolean stored () {
+		return false;
+	}
+
+	/* leaf of the cell at the coordinates relative to the minimum corner of a stored node or null for an empty cell */
+	public N storedLeaf (int x, int y, int z) {
+		return null;
+	}
+
+	/* drops the store of a stored node, its leaves have been moved into children or are recycled */
+	public void dropStore () {
+	}
+
+	/* clears the node on its way back to the node provider, so a recycled node starts out like a new one */
+	public void reset () {
+		if (!leaf()) initChilds(null);
+		dropStore();
+		parent = null;
+		key = OctreeKey.NONE;
+		epoch = 0;
+		uniform = null;
+		shared = false;
+		childMask = 0;
+	}
+
 	public boolean hasBoundingBox () {
 		if (parent == null) return true;
 		return false;
@@ -29,28 +163,106 @@ public abstract class OctreeNode<N extends OctreeNode<N>> {
 
 	public abstract BoundingBox boundingBox ();
 
-	public BoundingBox boundingBox (OctreeCalc calc) {
+	/* the own bounding box or the computed one in a scratch bounding box of the current scope, see OctreeScratch */
+	public BoundingBox scratchBoundingBox () {
 		if (hasBoundingBox()) return boundingBox();
-		if (this == calc.octree().rootNode) return rootBoundingBox;
-		return OctreeNodeTools.calcBoundingBoxFromNode(calc.boundingBox(), this, calc);
+		return OctreeNodeTools.boundingBox(OctreeScratch.get().boundingBox(), this);
+	}
+
+	/*
+	 * A child array with less than 8 slots is packed: it holds the children in index order and childMask tells
+	 * which indices are occupied, so the slot of index i is the number of set bits below i. A packed array grows
+	 * 1, 2, 4 and is replaced by a regular array of 8 slots once it is full.
+	 */
+	private byte childMask;
+
+	public N[] initChilds (N[] childs) {
+		childMask = 0;
+		uniform = null;
+		return childs(childs);
+	}
+
+	private static boolean packed (Object[] childs) {
+		return childs.length < 8;
+	}
+
+	private int slot (int i) {
+		return Integer.bitCount(childMask & ((1 << i) - 1));
+	}
+
+	/* bitmask of the occupied child indices */
+	public int childMask () {
+		if (leaf()) return 0;
+		N[] childs = childs();
+		if (childs == null) return 0;
+		if (packed(childs)) return childMask & 0xff;
+
+		int mask = 0;
+		for (int i = 0; i < 8; i++) {
+			if (childs[i] != null) mask |= 1 << i;
+		}
+		return mask;
 	}
 
 	public int childIndex (OctreeNode<?> child) {
-		int index = 0;
-		for (N elem : childs()) {
-			if (elem == child) return index;
-			++index;
+		N[] childs = childs();
+		if (childs == null) return -1;
+		if (!packed(childs)) {
+			for (int i = 0; i < 8; i++) {
+				if (childs[i] == child) return i;
+			}
+			return -1;
+		}
+
+		for (int mask = childMask & 0xff, slot = 0; mask != 0; mask &= mask - 1, ++slot) {
+			if (childs[slot] == child) return Integer.numberOfTrailingZeros(mask);
 		}
 		return -1;
 	}
 
 	public N child (int i) {
-		if (childs() == null) return null;
-		return childs()[i];
+		N[] childs = childs();
+		if (childs == null) return null;
+		if (!packed(childs)) return childs[i];
+		if ((childMask & (1 << i)) == 0) return null;
+		return childs[slot(i)];
 	}
 
 	public N child (int i, N node) {
-		return childs()[i] = node;
+		N[] childs = childs();
+		if (!packed(childs)) return childs[i] = node;
+
+		int bit = 1 << i;
+		int slot = slot(i);
+		int count = Integer.bitCount(childMask & 0xff);
+		if ((childMask & bit) != 0) {
+			if (node != null) return childs[slot] = node;
+
+			System.arraycopy(childs, slot + 1, childs, slot, count - slot - 1);
+			childs[count - 1] = null;
+			childMask &= ~bit;
+			return null;
+		}
+		if (node == null) return null;
+
+		if (count == childs.length) {
+			if (count * 2 < 8) {
+				childs = childs(Arrays.copyOf(childs, count * 2));
+			} else {
+				// full: switch to the regular array of 8 slots
+				N[] regular = Arrays.copyOf(childs, 8);
+				Arrays.fill(regular, null);
+				for (int mask = childMask & 0xff, s = 0; mask != 0; mask &= mask - 1, ++s) {
+					regular[Integer.numberOfTrailingZeros(mask)] = childs[s];
+				}
+				childMask = 0;
+				childs(regular);
+				return regular[i] = node;
+			}
+		}
+		System.arraycopy(childs, slot, childs, slot + 1, count - slot);
+		childMask |= bit;
+		return childs[slot] = node;
 	}
 
 	public abstract N[] childs ();
@@ -60,9 +272,11 @@ public abstract class OctreeNode<N extends OctreeNode<N>> {
 	public abstract boolean leaf ();
 
 	public boolean hasChilds () {
-		if (childs() == null) return false;
+		N[] childs = childs();
+		if (childs == null) return false;
+		if (packed(childs)) return childMask != 0;
 		for (int i = 0; i < 8; i++) {
-			if (childs()[i] != null) return true;
+			if (childs[i] != null) return true;
 		}
 		return false;
 	}
@@ -0,0 +1,135 @@
+package com.playmyskay.octree.common;
+
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Open addressing hash map from OctreeKey to node. Keys are stored in a primitive long array (linear probing,
+ * backward shift on removal), so lookups neither box nor allocate.
+ */
+public class OctreeNodeMap<N extends OctreeNode<N>> {
+	private static final long EMPTY = OctreeKey.NONE;
+	private static final float LOAD_FACTOR = 0.6f;
+
+	private long[] keys;
+	private Object[] values;
+	private int size = 0;
+	private int mask;
+	private int threshold;
+
+	public OctreeNodeMap() {
+		this(64);
+	}
+
+	public OctreeNodeMap(int capacity) {
+		allocate(capacity(capacity));
+	}
+
+	private static int capacity (int expected) {
+		int capacity = 16;
+		while (capacity * LOAD_FACTOR < expected) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private void allocate (int capacity) {
+		keys = new long[capacity];
+		Arrays.fill(keys, EMPTY);
+		values = new Object[capacity];
+		mask = capacity - 1;
+		threshold = (int) (capacity * LOAD_FACTOR);
+	}
+
+	private int slot (long key) {
+		int slot = OctreeKey.hash(key) & mask;
+		while (keys[slot] != EMPTY && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	@SuppressWarnings("unchecked")
+	public N get (long key) {
+		return (N) values[slot(key)];
+	}
+
+	public boolean containsKey (long key) {
+		return keys[slot(key)] != EMPTY;
+	}
+
+	@SuppressWarnings("unchecked")
+	public N put (long key, N node) {
+		int slot = slot(key);
+		N old = (N) values[slot];
+		if (keys[slot] == EMPTY) {
+			keys[slot] = key;
+			if (++size > threshold) {
+				values[slot] = node;
+				resize(keys.length << 1);
+				return null;
+			}
+		}
+		values[slot] = node;
+		return old;
+	}
+
+	@SuppressWarnings("unchecked")
+	public N remove (long key) {
+		int slot = slot(key);
+		if (keys[slot] == EMPTY) return null;
+		N old = (N) values[slot];
+
+		// backward shift: move following entries of the probe chain into the gap
+		int gap = slot;
+		int next = (gap + 1) & mask;
+		while (keys[next] != EMPTY) {
+			int home = OctreeKey.hash(keys[next]) & mask;
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				keys[gap] = keys[next];
+				values[gap] = values[next];
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[gap] = EMPTY;
+		values[gap] = null;
+		--size;
+		return old;
+	}
+
+	private void resize (int capacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; ++i) {
+			if (oldKeys[i] == EMPTY) continue;
+			int slot = slot(oldKeys[i]);
+			keys[slot] = oldKeys[i];
+			values[slot] = oldValues[i];
+		}
+	}
+
+	/* adds all nodes of the map to the list */
+	@SuppressWarnings("unchecked")
+	public List<N> values (List<N> result) {
+		for (int i = 0; i < keys.length; ++i) {
+			if (keys[i] != EMPTY) result.add((N) values[i]);
+		}
+		return result;
+	}
+
+	public int size () {
+		return size;
+	}
+
+	public int capacity () {
+		return keys.length;
+	}
+
+	public void clear () {
+		Arrays.fill(keys, EMPTY);
+		Arrays.fill(values, null);
+		size = 0;
+	}
+}
@@ -2,7 +2,6 @@ package com.playmyskay.octree.common;
 
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.BoundingBox;
-import com.badlogic.gdx.utils.Array;
 
 public class OctreeNodeTools {
 
@@ -39,69 +38,99 @@ public class OctreeNodeTools {
 //	}
 
 	public static <N extends OctreeNode<N>, D extends OctreeNodeDescriptor> N addNodeByVector (
-			IOctreeNodeProvider<N> provider, N node, Vector3 v, D descriptor, OctreeCalc calc) {
-
-		calc = calc.child();
+			IOctreeNodeProvider<N> provider, N node, Vector3 v, D descriptor) {
+		OctreeScratch scratch = OctreeScratch.get();
+		long mark = scratch.mark();
 
 		OctreeTools.adjustVector(v);
 		N parentNode = null;
 		N childNode = node;
-		BoundingBox boundingBox = calc.boundingBox();
-		Vector3 corner = calc.vector();
-		Vector3 cnt = calc.vector();
+		BoundingBox boundingBox = scratch.boundingBox();
 		for (int level = provider.levelIndex(node.getClass()); level > 0 && childNode != null; --level) {
 			parentNode = childNode;
-			childNode = OctreeTools.contains(childNode, v, calc);
-			calc.reset();
+			childNode = OctreeTools.contains(childNode, v);
 			if (childNode != null) continue;
 
 			for (int index = 0; index < 8 && childNode == null; ++index) {
-				OctreeTools.calculateBounds(boundingBox, index, parentNode, corner, cnt, calc);
+				OctreeTools.calculateBounds(boundingBox, index, parentNode);
 				if (boundingBox.contains(v)) {
 					childNode = OctreeTools.createChild(provider, parentNode, level, index, boundingBox, descriptor);
 				}
-
-				calc.reset();
 			}
+		}
 
-			calc.reset();
+		scratch.release(mark);
+		return childNode;
+	}
+
+	/*
+	 * Integer variant of addNodeByVector for a node which is aligned on its own size (level <= Octree.keyLevel), e.g.
+	 * a chunk which isn't attached to the octree yet.
+	 */
+	public static <N extends OctreeNode<N>, D extends OctreeNodeDescriptor> N addNodeByPosition (
+			IOctreeNodeProvider<N> provider, N node, int level, int x, int y, int z, D descriptor) {
+		OctreeScratch scratch = OctreeScratch.get();
+		long mark = scratch.mark();
+
+		BoundingBox boundingBox = scratch.boundingBox();
+		Vector3 min = scratch.vector();
+		Vector3 max = scratch.vector();
+		N childNode = node;
+		for (; level > 0 && childNode != null; --level) {
+			int index = OctreeKey.childIndex(level, x, y, z);
+			N parentNode = childNode;
+			childNode = parentNode.child(index);
+			if (childNode != null) continue;
+
+			int size = 1 << (level - 1);
+			min.set(x >> (level - 1) << (level - 1), y >> (level - 1) << (level - 1), z >> (level - 1) << (level - 1));
+			max.set(min).add(size, size, size);
+			boundingBox.set(min, max);
+			childNode = OctreeTools.createChild(provider, parentNode, level, index, boundingBox, descriptor);
 		}
 
+		scratch.release(mark);
 		return childNode;
 	}
 
-	public static synchronized <N extends OctreeNode<N>, D extends OctreeNodeDescriptor> N addNodeByBoundingBox (
-			Octree<N, D> octree, N node, D descriptor, OctreeCalc calc) {
+	public static <N extends OctreeNode<N>, D extends OctreeNodeDescriptor> N addNodeByBoundingBox (
+			Octree<N, D> octree, N node, D descriptor) {
 		N parentNode = null;
 		N childNode = octree.rootNode;
 		int levelIndex = octree.nodeProvider.levelIndex(node.getClass());
 
-		BoundingBox boundingBox = calc.boundingBox();
-		Vector3 corner = calc.vector();
-		Vector3 cnt = calc.vector();
+		OctreeScratch scratch = OctreeScratch.get();
+		long mark = scratch.mark();
+		BoundingBox boundingBox = scratch.boundingBox();
 		for (int level = octree.curLevel; level > levelIndex && childNode != null; --level) {
 			parentNode = childNode;
 			childNode = OctreeTools.contains(childNode, node.boundingBox());
 			if (childNode != null) continue;
 
 			for (int index = 0; index < 8 && childNode == null; ++index) {
-				OctreeTools.calculateBounds(boundingBox, index, parentNode, corner, cnt, calc);
+				OctreeTools.calculateBounds(boundingBox, index, parentNode);
 				if (boundingBox.contains(node.boundingBox())) {
 					childNode = OctreeTools.createChild(octree.nodeProvider, parentNode, level, index, boundingBox,
-							descriptor);
+							descriptor, octree.stats());
 				}
 			}
 		}
+		scratch.release(mark);
 
 		if (childNode != null) {
 			if (childNode == octree.rootNode) {
 				octree.rootNode = node;
+				octree.stats().removeSubtree(childNode, levelIndex);
+				octree.stats().addSubtree(node, levelIndex);
 				return node;
 			} else {
 				if (parentNode != null) {
 					int childIndex = parentNode.childIndex(childNode);
 					parentNode.child(childIndex, node);
 					node.parent(parentNode);
+					// the node replaces the subtree at its position
+					octree.stats().removeSubtree(childNode, levelIndex);
+					octree.stats().addSubtree(node, levelIndex);
 					return node;
 				}
 			}
@@ -110,6 +139,14 @@ public class OctreeNodeTools {
 		return null;
 	}
 
+	public static BoundingBox boundingBox (BoundingBox boundingBox, long key) {
+		int x = OctreeKey.x(key);
+		int y = OctreeKey.y(key);
+		int z = OctreeKey.z(key);
+		int size = OctreeKey.size(key);
+		return boundingBox.set(boundingBox.min.set(x, y, z), boundingBox.max.set(x + size, y + size, z + size));
+	}
+
 	public static <N extends OctreeNode<N>> int depth (OctreeNode<N> node) {
 		int depth = 1;
 		node = node.parent();
@@ -120,54 +157,20 @@ public class OctreeNodeTools {
 		return depth;
 	}
 
-	public static <N extends OctreeNode<N>> void calculateBoundingBoxFromNodes (BoundingBox boundingBox,
-			Array<OctreeNode<?>> nodes, int startIndex, OctreeCalc calc) {
-		OctreeNode<?> parent = null;
-
-		Vector3 corner = calc.vector();
-		Vector3 cnt = calc.vector();
-		for (int i = startIndex; i > 0 && nodes.items[i] != null; --i) {
-			parent = nodes.items[i];
-			OctreeTools.calculateBounds(boundingBox, parent.childIndex(nodes.items[i - 1]), parent, corner, cnt, calc);
-		}
-	}
-
-	public static <N extends OctreeNode<N>> BoundingBox calcBoundingBoxFromRoot (BoundingBox boundingBox,
-			OctreeNode<N> node, OctreeCalc calc) {
-		int depth = depth(node);
-
-		Array<OctreeNode<?>> nodes = calc.nodeArray(depth);
-
-		int index = depth;
-		nodes.items[--index] = node;
-
-		OctreeNode<?> parent = null;
-		while (index > 0) {
-			parent = nodes.items[depth].parent();
-			nodes.insert(--index, parent);
-		}
-
-		calculateBoundingBoxFromNodes(boundingBox, nodes, depth - 1, calc);
-		return calc.boundingBox();
+	/* bounding box of the node: its own, the one of its key or the one derived from its ancestors */
+	public static <N extends OctreeNode<N>> BoundingBox boundingBox (BoundingBox boundingBox, OctreeNode<N> node) {
+		if (node.hasBoundingBox()) return boundingBox.set(node.boundingBox());
+		if (node.key() != OctreeKey.NONE) return boundingBox(boundingBox, node.key());
+		OctreeNode<N> parent = node.parent();
+		return octant(boundingBox(boundingBox, parent), parent.childIndex(node));
 	}
 
-	public static <N extends OctreeNode<N>> BoundingBox calcBoundingBoxFromNode (BoundingBox boundingBox,
-			OctreeNode<N> node, OctreeCalc calc) {
-		calc = calc.child();
-
-		Array<OctreeNode<?>> nodes = calc.nodeArray(7);
-		nodes.clear();
-
-		int i = 0;
-		while (!node.hasBoundingBox()) {
-			nodes.items[i++] = node;
-			node = node.parent();
-		}
-		nodes.items[i] = node;
-
-		boundingBox.set(node.boundingBox());
-		calculateBoundingBoxFromNodes(boundingBox, nodes, i, calc);
-
-		return boundingBox;
+	/* shrinks the bounding box to the octant of the child index, see OctreeKey */
+	public static BoundingBox octant (BoundingBox boundingBox, int index) {
+		Vector3 min = boundingBox.min;
+		float half = boundingBox.getWidth() / 2f;
+		min.add((index & 1) != 0 ? half : 0f, (index & 4) != 0 ? half : 0f, (index & 2) != 0 ? half : 0f);
+		boundingBox.max.set(min).add(half, half, half);
+		return boundingBox.set(min, boundingBox.max);
 	}
 }
@@ -0,0 +1,90 @@
+package com.playmyskay.octree.common;
+
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.LongArray;
+
+/*
+ * Scratch vectors and bounding boxes of the calling thread, handed out like a stack: a scope takes a mark, obtains
+ * what it needs and releases the mark, which takes back everything obtained since. The stack grows when a scope
+ * needs more, so a thread allocates nothing once it is warmed up. A method which returns a scratch object hands it
+ * to the scope of its caller.
+ *
+ * With DEBUG a mark released out of order, i.e. an inner scope which has not been released, and a thread holding
+ * more than DEBUG_LIMIT objects, i.e. objects obtained in a loop without a scope, throw a GdxRuntimeException.
+ */
+public final class OctreeScratch {
+	public static boolean DEBUG = false;
+	public static int DEBUG_LIMIT = 1024;
+
+	private static ThreadLocal<OctreeScratch> scratch = ThreadLocal.withInitial(OctreeScratch::new);
+
+	private Vector3[] vectors = new Vector3[16];
+	private int vectorCount;
+	private BoundingBox[] boundingBoxes = new BoundingBox[16];
+	private int boundingBoxCount;
+	// the open marks, only kept with DEBUG
+	private LongArray marks = new LongArray();
+
+	private OctreeScratch() {
+	}
+
+	public static OctreeScratch get () {
+		return scratch.get();
+	}
+
+	public long mark () {
+		long mark = (long) boundingBoxCount << 32 | vectorCount;
+		if (DEBUG) marks.add(mark);
+		return mark;
+	}
+
+	public void release (long mark) {
+		if (DEBUG) {
+			if (marks.size == 0 || marks.peek() != mark) {
+				throw new GdxRuntimeException("scratch released out of order, an inner scope has not been released");
+			}
+			marks.pop();
+		}
+		vectorCount = (int) mark;
+		boundingBoxCount = (int) (mark >>> 32);
+	}
+
+	public Vector3 vector () {
+		if (DEBUG) check(vectorCount);
+		if (vectorCount == vectors.length) {
+			Vector3[] grown = new Vector3[vectors.length * 2];
+			System.arraycopy(vectors, 0, grown, 0, vectors.length);
+			vectors = grown;
+		}
+		Vector3 vector = vectors[vectorCount];
+		if (vector == null) vector = vectors[vectorCount] = new Vector3();
+		++vectorCount;
+		return vector;
+	}
+
+	public BoundingBox boundingBox () {
+		if (DEBUG) check(boundingBoxCount);
+		if (boundingBoxCount == boundingBoxes.length) {
+			BoundingBox[] grown = new BoundingBox[boundingBoxes.length * 2];
+			System.arraycopy(boundingBoxes, 0, grown, 0, boundingBoxes.length);
+			boundingBoxes = grown;
+		}
+		BoundingBox boundingBox = boundingBoxes[boundingBoxCount];
+		if (boundingBox == null) boundingBox = boundingBoxes[boundingBoxCount] = new BoundingBox();
+		++boundingBoxCount;
+		return boundingBox;
+	}
+
+	/* number of objects currently obtained, 0 outside of all scopes unless a scope has leaked */
+	public int held () {
+		return vectorCount + boundingBoxCount;
+	}
+
+	private static void check (int count) {
+		if (count >= DEBUG_LIMIT) {
+			throw new GdxRuntimeException("scratch overflow, objects are obtained without releasing their scope");
+		}
+	}
+}
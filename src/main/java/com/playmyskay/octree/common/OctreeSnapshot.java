@@ -0,0 +1,24 @@
+package com.playmyskay.octree.common;
+
+/*
+ * Immutable view of an octree (see Octree.snapshot()). The nodes down to the key level are copies, which the next
+ * snapshot takes over unless their live nodes have been changed, and everything below is shared with the octree,
+ * which copies those nodes before it changes them. Readers traverse it from the root without any locking and don't
+ * use the parents of the nodes. A reader which acquires the snapshot (see Octree.acquireSnapshot()) keeps the
+ * retired nodes it reaches from being recycled.
+ */
+public class OctreeSnapshot<N extends OctreeNode<N>> {
+	public final N rootNode;
+	public final int curLevel;
+	public final int keyLevel;
+	public final int epoch;
+	// number of the readers which have acquired the snapshot, guarded by the octree
+	int readers;
+
+	public OctreeSnapshot(N rootNode, int curLevel, int keyLevel, int epoch) {
+		this.rootNode = rootNode;
+		this.curLevel = curLevel;
+		this.keyLevel = keyLevel;
+		this.epoch = epoch;
+	}
+}
@@ -0,0 +1,159 @@
+package com.playmyskay.octree.common;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Counters of the shape of an octree. They are updated by the Octree and OctreeTools whenever nodes are attached
+ * to or detached from the tree, so reading them costs nothing. A shared node (see OctreeNode.shared()) is counted
+ * once per parent, the savings of the deduplication are reported by the OctreeInterner.
+ */
+public class OctreeStats {
+	// rough sizes of a node object, a child array object and one of its slots
+	public static final int NODE_BYTES = 40;
+	public static final int ARRAY_BYTES = 16;
+	public static final int SLOT_BYTES = 4;
+
+	private AtomicLongArray nodes = new AtomicLongArray(OctreeKey.LEVEL_MAX + 1);
+	private AtomicLongArray uniformNodes = new AtomicLongArray(OctreeKey.LEVEL_MAX + 1);
+	private Map<Class<?>, LongAdder> classNodes = new ConcurrentHashMap<>();
+	private LongAdder arrays = new LongAdder();
+	private LongAdder slots = new LongAdder();
+	private IOctreeNodeProvider<?> nodeProvider;
+
+	public void nodeProvider (IOctreeNodeProvider<?> nodeProvider) {
+		this.nodeProvider = nodeProvider;
+	}
+
+	/* number of slots of the child array of the node, 0 without an array */
+	public static int slots (OctreeNode<?> node) {
+		if (node == null || node.leaf() || node.childs() == null) return 0;
+		return node.childs().length;
+	}
+
+	private void count (OctreeNode<?> node, int level, int sign) {
+		if (level < 0) return;
+		nodes.addAndGet(level, sign);
+		classNodes.computeIfAbsent(node.getClass(), clazz -> new LongAdder()).add(sign);
+		if (node.uniform() != null) uniformNodes.addAndGet(level, sign);
+		int nodeSlots = slots(node);
+		if (nodeSlots > 0) {
+			arrays.add(sign);
+			slots.add(sign * nodeSlots);
+		}
+	}
+
+	/* the node has been attached, its children are counted on their own */
+	public void add (OctreeNode<?> node, int level) {
+		count(node, level, 1);
+	}
+
+	public void remove (OctreeNode<?> node, int level) {
+		count(node, level, -1);
+	}
+
+	public void addSubtree (OctreeNode<?> node, int level) {
+		if (node == null) return;
+		count(node, level, 1);
+		for (int mask = node.childMask(); mask != 0; mask &= mask - 1) {
+			addSubtree(node.child(Integer.numberOfTrailingZeros(mask)), level - 1);
+		}
+	}
+
+	public void removeSubtree (OctreeNode<?> node, int level) {
+		if (node == null) return;
+		count(node, level, -1);
+		for (int mask = node.childMask(); mask != 0; mask &= mask - 1) {
+			removeSubtree(node.child(Integer.numberOfTrailingZeros(mask)), level - 1);
+		}
+	}
+
+	/* the child array of the node has been created, grown or dropped, slotsBefore is slots(node) before */
+	public void childsChanged (OctreeNode<?> node, int slotsBefore) {
+		int slotsAfter = slots(node);
+		if (slotsAfter == slotsBefore) return;
+		if (slotsBefore == 0) arrays.increment();
+		if (slotsAfter == 0) arrays.decrement();
+		slots.add(slotsAfter - slotsBefore);
+	}
+
+	/* the node of the given level has become uniform (1) or has been split (-1) */
+	public void uniformChanged (int level, int delta) {
+		uniformNodes.addAndGet(level, delta);
+	}
+
+	public long nodes () {
+		long count = 0;
+		for (int level = 0; level < nodes.length(); ++level) {
+			count += nodes.get(level);
+		}
+		return count;
+	}
+
+	public long nodes (int level) {
+		return nodes.get(level);
+	}
+
+	public long nodes (Class<?> clazz) {
+		LongAdder count = classNodes.get(clazz);
+		return count != null ? count.sum() : 0;
+	}
+
+	public long uniformNodes (int level) {
+		return uniformNodes.get(level);
+	}
+
+	public long arrays () {
+		return arrays.sum();
+	}
+
+	public long slots () {
+		return slots.sum();
+	}
+
+	/* occupied share of the slots of all child arrays, every node but the root occupies one slot */
+	public float fillRatio () {
+		long slots = slots();
+		if (slots == 0) return 0f;
+		return Math.max(0, nodes() - 1) / (float) slots;
+	}
+
+	/* estimated with NODE_BYTES, ARRAY_BYTES and SLOT_BYTES */
+	public long bytes () {
+		return nodes() * NODE_BYTES + arrays() * ARRAY_BYTES + slots() * SLOT_BYTES;
+	}
+
+	/* nodes of the given class waiting in the pool of the node provider */
+	public int pooled (Class<?> clazz) {
+		if (nodeProvider == null) return 0;
+		return nodeProvider.pooled(clazz);
+	}
+
+	/* number of leaves and uniform nodes per depth below the root of the given level */
+	public long[] depthDistribution (int rootLevel) {
+		long[] distribution = new long[rootLevel + 1];
+		for (int depth = 0; depth <= rootLevel; ++depth) {
+			int level = rootLevel - depth;
+			distribution[depth] = uniformNodes(level) + (level == 0 ? nodes(0) : 0);
+		}
+		return distribution;
+	}
+
+	@Override
+	public String toString () {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("nodes(%d) arrays(%d) slots(%d) fill(%.2f) bytes(%d)", nodes(), arrays(), slots(),
+				fillRatio(), bytes()));
+		for (int level = 0; level < nodes.length(); ++level) {
+			if (nodes(level) == 0) continue;
+			sb.append(String.format("\nlevel(%d) nodes(%d) uniform(%d)", level, nodes(level), uniformNodes(level)));
+		}
+		for (Map.Entry<Class<?>, LongAdder> entry : classNodes.entrySet()) {
+			sb.append(String.format("\n%s nodes(%d) pooled(%d)", entry.getKey().getSimpleName(), entry.getValue().sum(),
+					pooled(entry.getKey())));
+		}
+		return sb.toString();
+	}
+}
@@ -26,15 +26,11 @@ public class OctreeTools {
 		return null;
 	}
 
-	public static void getConers (Vector3[] corners, BoundingBox boundingBox, OctreeCalc calc) {
-		corners[0] = getCorner(0, boundingBox, calc.vector());
-		corners[1] = getCorner(1, boundingBox, calc.vector());
-		corners[2] = getCorner(2, boundingBox, calc.vector());
-		corners[3] = getCorner(3, boundingBox, calc.vector());
-		corners[4] = getCorner(4, boundingBox, calc.vector());
-		corners[5] = getCorner(5, boundingBox, calc.vector());
-		corners[6] = getCorner(6, boundingBox, calc.vector());
-		corners[7] = getCorner(7, boundingBox, calc.vector());
+	/* sets the 8 given vectors to the corners of the bounding box */
+	public static void getConers (Vector3[] corners, BoundingBox boundingBox) {
+		for (int i = 0; i < 8; i++) {
+			getCorner(i, boundingBox, corners[i]);
+		}
 	}
 
 	public static void getDistances (Vector3 v, Vector3[] corners, float[] dst2) {
@@ -48,9 +44,8 @@ public class OctreeTools {
 		dst2[7] = corners[7].dst2(v);
 	}
 
-	public static int getNearestIndex (BoundingBox boundingBox, Vector3 v, Vector3[] corners, float[] dst2,
-			OctreeCalc calc) {
-		OctreeTools.getConers(corners, boundingBox, calc);
+	public static int getNearestIndex (BoundingBox boundingBox, Vector3 v, Vector3[] corners, float[] dst2) {
+		OctreeTools.getConers(corners, boundingBox);
 		OctreeTools.getDistances(v, corners, dst2);
 
 		int near = 0;
@@ -62,11 +57,10 @@ public class OctreeTools {
 		return near;
 	}
 
-	public static <N extends OctreeNode<N>> void calculateBounds (BoundingBox boundingBox, int index,
-			OctreeNode<N> parentNode, Vector3 corner, Vector3 cnt, OctreeCalc calc) {
-		OctreeTools.getCorner(index, parentNode.boundingBox(calc), corner);
-		parentNode.boundingBox(calc).getCenter(cnt);
-		boundingBox.set(corner, cnt);
+	/* sets the bounding box to the one of the child index of the parent node */
+	public static <N extends OctreeNode<N>> BoundingBox calculateBounds (BoundingBox boundingBox, int index,
+			OctreeNode<N> parentNode) {
+		return OctreeNodeTools.octant(OctreeNodeTools.boundingBox(boundingBox, parentNode), index);
 	}
 
 	public static void adjustVector (Vector3 v) {
@@ -81,26 +75,21 @@ public class OctreeTools {
 		}
 	}
 
-	public static <N extends OctreeNode<N>> N contains (N currentNode, Vector3 v, OctreeCalc calc) {
-		for (int index = 0; index < 8; index++) {
-			if (currentNode.childs() == null) continue;
-			if (currentNode.child(index) != null) {
-				if (currentNode.child(index).boundingBox(calc).contains(v)) {
-					return currentNode.child(index);
-				}
+	public static <N extends OctreeNode<N>> N contains (N currentNode, Vector3 v) {
+		for (int mask = currentNode.childMask(); mask != 0; mask &= mask - 1) {
+			N child = currentNode.child(Integer.numberOfTrailingZeros(mask));
+			if (child.contains(v)) {
+				return child;
 			}
-			calc.reset();
 		}
 		return null;
 	}
 
 	public static <N extends OctreeNode<N>> N contains (N currentNode, BoundingBox boundingBox) {
-		for (int index = 0; index < 8; index++) {
-			if (currentNode.childs() == null) continue;
-			if (currentNode.child(index) != null) {
-				if (currentNode.child(index).boundingBox().contains(boundingBox)) {
-					return currentNode.child(index);
-				}
+		for (int mask = currentNode.childMask(); mask != 0; mask &= mask - 1) {
+			N child = currentNode.child(Integer.numberOfTrailingZeros(mask));
+			if (child.boundingBox().contains(boundingBox)) {
+				return child;
 			}
 		}
 		return null;
@@ -108,33 +97,70 @@ public class OctreeTools {
 
 	public static <N extends OctreeNode<N>> N createChild (IOctreeNodeProvider<N> nodeProvider, N node, int level,
 			int index, BoundingBox boundingBox, OctreeNodeDescriptor descriptor) {
+		return createChild(nodeProvider, node, level, index, boundingBox, descriptor, null);
+	}
+
+	public static <N extends OctreeNode<N>> N createChild (IOctreeNodeProvider<N> nodeProvider, N node, int level,
+			int index, BoundingBox boundingBox, OctreeNodeDescriptor descriptor, OctreeStats stats) {
 		if (node.childs() == null || node.child(index) == null) {
+			int slots = OctreeStats.slots(node);
 			if (node.childs() == null) {
-				node.childs(nodeProvider.createArray(level - 1, 8));
+				createChilds(nodeProvider, node, level);
 			}
-			node.child(index, nodeProvider.create(level - 1));
-			node.child(index).parent(node);
-			if (node.child(index).hasBoundingBox()) {
-				node.child(index).boundingBox().set(boundingBox);
+			// the child array of the new child is created with its first child
+			N child = node.child(index, nodeProvider.create(level - 1));
+			child.parent(node);
+			if (child.hasBoundingBox()) {
+				child.boundingBox().set(boundingBox);
 			}
-			node.child(index).childs(nodeProvider.createArray(level - 1, 8));
-			if (descriptor != null) node.child(index).descriptor(descriptor);
-			return node.child(index);
+			if (descriptor != null) child.descriptor(descriptor);
+			if (stats != null) {
+				stats.childsChanged(node, slots);
+				stats.add(child, level - 1);
+			}
+			return child;
 		}
 		return node.child(index);
 	}
 
+	public static <N extends OctreeNode<N>> N[] createChilds (IOctreeNodeProvider<N> nodeProvider, N node,
+			int level) {
+		return node.initChilds(nodeProvider.createArray(level - 1, nodeProvider.compact() ? 1 : 8));
+	}
+
 	public static <N extends OctreeNode<N>> boolean removeChild (N node) {
 		if (node.parent() == null) return false;
 		N parent = node.parent();
-		for (int i = 0; i < 8; ++i) {
-			if (parent.childs() == null) continue;
-			if (parent.child(i) == null) continue;
-			if (parent.child(i) != node) continue;
-			parent.child(i, null);
-			return true;
+		int index = parent.childIndex(node);
+		if (index < 0) return false;
+		parent.child(index, null);
+		return true;
+	}
+
+	/* leaf all 8 children are equal to (as leaves or uniform nodes) or null if the node cannot be collapsed */
+	public static <N extends OctreeNode<N>> N uniformContent (N node) {
+		if (node == null || node.leaf() || node.childMask() != 0xff) return null;
+		N content = null;
+		for (int i = 0; i < 8; i++) {
+			N child = node.child(i);
+			N leaf = child.leaf() ? child : child.uniform();
+			if (leaf == null) return null;
+			if (content == null) {
+				content = leaf;
+			} else if (leaf != content && !content.sameContent(leaf)) {
+				return null;
+			}
 		}
-		return false;
+		return content;
+	}
+
+	/* replaces the children of the node by a uniform node if they are all equal */
+	public static <N extends OctreeNode<N>> boolean collapse (N node) {
+		N content = uniformContent(node);
+		if (content == null) return false;
+		node.initChilds(null);
+		node.uniform(content);
+		return true;
 	}
 
 	public static <N extends OctreeNode<N>> void updateNode (N updateNode, OctreeNodeDescriptor descriptor) {
@@ -146,17 +172,53 @@ public class OctreeTools {
 		}
 	}
 
+	/* updates the given number of levels starting with the updated node */
+	public static <N extends OctreeNode<N>> void updateNode (N updateNode, OctreeNodeDescriptor descriptor,
+			int levels) {
+		N node = updateNode;
+		for (int level = 0; level < levels && node != null; ++level) {
+			node.update(updateNode, descriptor);
+			node = node.parent();
+		}
+	}
+
+	/* updates the node and its ancestors with the updated node */
+	public static <N extends OctreeNode<N>> void updateNode (N node, N updateNode, OctreeNodeDescriptor descriptor) {
+		while (node != null) {
+			node.update(updateNode, descriptor);
+			node = node.parent();
+		}
+	}
+
+	/* updates the nodes of an attached subtree bottom-up, a shared subtree is never changed */
+	public static <N extends OctreeNode<N>> void updateSubtree (N node, OctreeNodeDescriptor descriptor) {
+		if (node.leaf() || node.shared()) return;
+		for (int mask = node.childMask(); mask != 0; mask &= mask - 1) {
+			updateSubtree(node.child(Integer.numberOfTrailingZeros(mask)), descriptor);
+		}
+		node.update(node, descriptor);
+	}
+
 	public static interface INodeHandler<N extends OctreeNode<N>> {
 		public void process (N node);
 	}
 
 	public static <N extends OctreeNode<N>> void removeNode (N currentNode, INodeHandler<N> nodeHandler) {
+		removeNode(currentNode, 0, nodeHandler, null);
+	}
+
+	/* removes the node of the given level and its ancestors which become empty */
+	public static <N extends OctreeNode<N>> void removeNode (N currentNode, int level, INodeHandler<N> nodeHandler,
+			OctreeStats stats) {
 		while (currentNode != null && currentNode.parent() != null) {
-			OctreeTools.removeChild(currentNode);
+			// a leaf collapsed into a uniform node is no child anymore, the uniform node has to be split first
+			if (!OctreeTools.removeChild(currentNode)) return;
+			if (stats != null) stats.removeSubtree(currentNode, level);
 			if (nodeHandler != null) nodeHandler.process(currentNode);
 			if (currentNode.parent().hasChilds()) return;
 
 			currentNode = currentNode.parent();
+			++level;
 		}
 	}
 }
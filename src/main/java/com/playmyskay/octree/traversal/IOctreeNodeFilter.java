@@ -1,5 +1,14 @@
 package com.playmyskay.octree.traversal;
 
 public abstract interface IOctreeNodeFilter {
+	/* true if the node is filtered out */
 	public boolean filter (Object node);
+
+	/*
+	 * True if every leaf below the node is filtered out. A traversal which records the leaves drops such a subtree
+	 * before it computes its bounds.
+	 */
+	public default boolean filterLeaves (Object node) {
+		return false;
+	}
 }
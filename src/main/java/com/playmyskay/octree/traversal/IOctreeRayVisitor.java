@@ -0,0 +1,11 @@
+package com.playmyskay.octree.traversal;
+
+import com.playmyskay.octree.common.OctreeNode;
+
+public interface IOctreeRayVisitor<N extends OctreeNode<N>> {
+	/*
+	 * key is the key of the node or, for a uniform node visited in place of its leaves, of the leaf hit by the ray.
+	 * The distance is measured in multiples of the ray direction, the faces are numbered -x, +x, -y, +y, -z, +z.
+	 */
+	public VisitResult visit (N node, long key, int level, float distance, int face);
+}
@@ -0,0 +1,14 @@
+package com.playmyskay.octree.traversal;
+
+import com.playmyskay.octree.common.OctreeNode;
+
+/* map/reduce over the recorded nodes of an octree, see OctreeParallelTraversal */
+public interface IOctreeReducer<N extends OctreeNode<N>, A> {
+	/* an empty accumulator, every task gets its own */
+	public A create ();
+
+	/* a uniform node is accumulated once in place of all leaves of its level, see OctreeNode.uniform() */
+	public void accumulate (A accumulator, N node, long key, int level);
+
+	public A merge (A accumulator, A other);
+}
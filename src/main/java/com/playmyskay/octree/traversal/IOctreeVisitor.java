@@ -0,0 +1,8 @@
+package com.playmyskay.octree.traversal;
+
+import com.playmyskay.octree.common.OctreeNode;
+
+public interface IOctreeVisitor<N extends OctreeNode<N>> {
+	/* key is the key of the node, OctreeKey.NONE for a node with an own bounding box */
+	public VisitResult visit (N node, long key, int level);
+}
@@ -1,10 +1,27 @@
 package com.playmyskay.octree.traversal;
 
 import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.playmyskay.octree.common.OctreeKey;
 import com.playmyskay.octree.common.OctreeNode;
+import com.playmyskay.octree.common.OctreeNodeTools;
+import com.playmyskay.octree.common.OctreeScratch;
 
 public class IntersectionData<N extends OctreeNode<N>> {
 	public N node;
 	public Vector3 point;
 	public Vector3 normal;
-}
\ No newline at end of file
+	// key of the recorded node or, for a uniform node recorded in place of its leaves, of the leaf hit by the ray
+	public long key = OctreeKey.NONE;
+
+	public long key () {
+		if (key != OctreeKey.NONE) return key;
+		return node.key();
+	}
+
+	/* bounding box of the key or the node, computed in a scratch bounding box of the current scope */
+	public BoundingBox scratchBoundingBox () {
+		if (key != OctreeKey.NONE) return OctreeNodeTools.boundingBox(OctreeScratch.get().boundingBox(), key);
+		return node.scratchBoundingBox();
+	}
+}
@@ -0,0 +1,188 @@
+package com.playmyskay.octree.traversal;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.math.collision.Ray;
+import com.playmyskay.octree.common.Octree;
+import com.playmyskay.octree.common.OctreeKey;
+import com.playmyskay.octree.common.OctreeNode;
+import com.playmyskay.octree.common.OctreeSnapshot;
+
+/*
+ * Streams the nodes of an octree to a visitor instead of collecting them. The pending nodes are kept on an explicit
+ * stack that is reused by the next traversal, so a cursor allocates nothing per node. A cursor is used by one
+ * thread at a time.
+ *
+ * The nodes of the levels recorded in the settings are visited, a uniform node in place of its leaves. The visitor
+ * decides whether the children of a visited node are traversed as well, down to settings.maxLevel. The leaves of a
+ * stored node are visited cell by cell, the levels between it and its leaves have no nodes to visit.
+ *
+ * An octree is traversed in a snapshot acquired for the traversal (see Octree.acquireSnapshot()), so no node is
+ * recycled under the cursor.
+ */
+public class OctreeCursor<N extends OctreeNode<N>> {
+	private static final int STACK_SIZE = (OctreeKey.LEVEL_MAX + 1) * 8;
+
+	private Object[] nodes = new Object[STACK_SIZE];
+	private long[] keys = new long[STACK_SIZE];
+	private int[] levels = new int[STACK_SIZE];
+	private int size;
+	private OctreeRayCast<N> rayCast;
+
+	/* the nodes intersecting the bounding box in depth first order, all nodes for a null bounding box */
+	public void visit (Octree<N, ?> octree, BoundingBox boundingBox, OctreeTraversalSettings settings,
+			IOctreeVisitor<N> visitor) {
+		OctreeSnapshot<N> snapshot = octree.acquireSnapshot();
+		try {
+			visit(snapshot, boundingBox, settings, visitor);
+		} finally {
+			octree.releaseSnapshot(snapshot);
+		}
+	}
+
+	public void visit (OctreeSnapshot<N> snapshot, BoundingBox boundingBox, OctreeTraversalSettings settings,
+			IOctreeVisitor<N> visitor) {
+		visit(snapshot.rootNode, snapshot.curLevel, boundingBox, settings, visitor);
+	}
+
+	/* the nodes hit by the ray front-to-back, the settings filter is applied before the visitor */
+	public void visit (Octree<N, ?> octree, Ray ray, float maxDistance, OctreeTraversalSettings settings,
+			IOctreeRayVisitor<N> visitor) {
+		OctreeSnapshot<N> snapshot = octree.acquireSnapshot();
+		try {
+			visit(snapshot, ray, maxDistance, settings, visitor);
+		} finally {
+			octree.releaseSnapshot(snapshot);
+		}
+	}
+
+	public void visit (OctreeSnapshot<N> snapshot, Ray ray, float maxDistance, OctreeTraversalSettings settings,
+			IOctreeRayVisitor<N> visitor) {
+		visit(snapshot.rootNode, snapshot.curLevel, ray, maxDistance, settings, visitor);
+	}
+
+	public void visit (N rootNode, int rootLevel, Ray ray, float maxDistance, OctreeTraversalSettings settings,
+			IOctreeRayVisitor<N> visitor) {
+		if (rayCast == null) rayCast = new OctreeRayCast<>();
+		rayCast.visit(rootNode, rootLevel, ray, maxDistance, settings, visitor);
+	}
+
+	public void visit (N rootNode, int rootLevel, BoundingBox boundingBox, OctreeTraversalSettings settings,
+			IOctreeVisitor<N> visitor) {
+		visit(rootNode, OctreeKey.NONE, rootLevel, boundingBox, settings, visitor);
+	}
+
+	/*
+	 * The traversal starts at a subtree, the key of its root is needed if it has no own bounding box. Returns false
+	 * if the visitor has stopped the traversal.
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean visit (N rootNode, long rootKey, int rootLevel, BoundingBox boundingBox,
+			OctreeTraversalSettings settings, IOctreeVisitor<N> visitor) {
+		if (rootNode == null) return true;
+		if (boundingBox != null && !overlaps(rootNode, rootKey, boundingBox)) return true;
+
+		push(rootNode, rootKey, rootLevel);
+		while (size > 0) {
+			--size;
+			N node = (N) nodes[size];
+			long key = keys[size];
+			int level = levels[size];
+			nodes[size] = null;
+
+			if (settings.recorded(level) || (node.uniform() != null && settings.recordedBelow(level))) {
+				VisitResult result = visitor.visit(node, key, level);
+				if (result == VisitResult.STOP) {
+					clear();
+					return false;
+				}
+				if (result == VisitResult.SKIP) continue;
+			}
+
+			if (settings.maxLevel > level) continue;
+			if (node.stored()) {
+				if (settings.recorded(0) && !visitStored(node, key, level, boundingBox, visitor)) {
+					clear();
+					return false;
+				}
+				continue;
+			}
+			// pushed in reverse order, so the children are visited in index order
+			for (int mask = node.childMask(); mask != 0;) {
+				int i = 31 - Integer.numberOfLeadingZeros(mask);
+				mask &= ~(1 << i);
+				N child = node.child(i);
+				long childKey = OctreeTraversal.childKey(node, key, level, child, i);
+				if (boundingBox != null && !overlaps(child, childKey, boundingBox)) continue;
+				push(child, childKey, level - 1);
+			}
+		}
+		return true;
+	}
+
+	/* visits the leaves of the stored node touching the bounding box, returns false if the visitor has stopped */
+	private boolean visitStored (N node, long key, int level, BoundingBox boundingBox, IOctreeVisitor<N> visitor) {
+		int size = 1 << level;
+		int minX, minY, minZ;
+		if (key != OctreeKey.NONE) {
+			minX = OctreeKey.x(key);
+			minY = OctreeKey.y(key);
+			minZ = OctreeKey.z(key);
+		} else {
+			BoundingBox nodeBoundingBox = node.boundingBox();
+			minX = (int) nodeBoundingBox.min.x;
+			minY = (int) nodeBoundingBox.min.y;
+			minZ = (int) nodeBoundingBox.min.z;
+		}
+		int fromX = 0, fromY = 0, fromZ = 0;
+		int toX = size - 1, toY = size - 1, toZ = size - 1;
+		if (boundingBox != null) {
+			fromX = Math.max(fromX, MathUtils.ceil(boundingBox.min.x) - 1 - minX);
+			fromY = Math.max(fromY, MathUtils.ceil(boundingBox.min.y) - 1 - minY);
+			fromZ = Math.max(fromZ, MathUtils.ceil(boundingBox.min.z) - 1 - minZ);
+			toX = Math.min(toX, MathUtils.floor(boundingBox.max.x) - minX);
+			toY = Math.min(toY, MathUtils.floor(boundingBox.max.y) - minY);
+			toZ = Math.min(toZ, MathUtils.floor(boundingBox.max.z) - minZ);
+		}
+
+		for (int y = fromY; y <= toY; ++y) {
+			for (int z = fromZ; z <= toZ; ++z) {
+				for (int x = fromX; x <= toX; ++x) {
+					N leaf = node.storedLeaf(x, y, z);
+					if (leaf == null) continue;
+					long leafKey = OctreeKey.encode(0, minX + x, minY + y, minZ + z);
+					if (visitor.visit(leaf, leafKey, 0) == VisitResult.STOP) return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private void push (N node, long key, int level) {
+		nodes[size] = node;
+		keys[size] = key;
+		levels[size] = level;
+		++size;
+	}
+
+	private void clear () {
+		while (size > 0) {
+			nodes[--size] = null;
+		}
+	}
+
+	static boolean overlaps (OctreeNode<?> node, long key, BoundingBox boundingBox) {
+		if (key == OctreeKey.NONE) {
+			BoundingBox nodeBoundingBox = node.boundingBox();
+			return nodeBoundingBox.min.x <= boundingBox.max.x && nodeBoundingBox.max.x >= boundingBox.min.x
+					&& nodeBoundingBox.min.y <= boundingBox.max.y && nodeBoundingBox.max.y >= boundingBox.min.y
+					&& nodeBoundingBox.min.z <= boundingBox.max.z && nodeBoundingBox.max.z >= boundingBox.min.z;
+		}
+		int size = OctreeKey.size(key);
+		int x = OctreeKey.x(key);
+		int y = OctreeKey.y(key);
+		int z = OctreeKey.z(key);
+		return x <= boundingBox.max.x && x + size >= boundingBox.min.x && y <= boundingBox.max.y
+				&& y + size >= boundingBox.min.y && z <= boundingBox.max.z && z + size >= boundingBox.min.z;
+	}
+}
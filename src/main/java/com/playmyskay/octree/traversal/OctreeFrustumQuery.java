@@ -0,0 +1,103 @@
+package com.playmyskay.octree.traversal;
+
+import java.util.List;
+
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.playmyskay.octree.common.OctreeKey;
+import com.playmyskay.octree.common.OctreeNode;
+
+/*
+ * Nodes of one level inside a frustum, front-to-back as seen from the eye. A subtree completely inside the frustum
+ * is collected without further tests, one completely outside is dropped. The children of a node are walked in the
+ * order of their index xor the octant of the eye, starting with the child on the side of the eye, which is a
+ * front-to-back order for the disjoint boxes of siblings.
+ */
+class OctreeFrustumQuery<N extends OctreeNode<N>> {
+	private static final int OUTSIDE = 0;
+	private static final int INTERSECTS = 1;
+	private static final int INSIDE = 2;
+
+	private Frustum frustum;
+	private Vector3 eye;
+	private int level;
+	private List<N> result;
+	private float[] min = new float[3];
+	private float[] max = new float[3];
+
+	OctreeFrustumQuery(Frustum frustum, Vector3 eye, int level, List<N> result) {
+		this.frustum = frustum;
+		this.eye = eye;
+		this.level = level;
+		this.result = result;
+	}
+
+	void query (N rootNode, int rootLevel) {
+		if (rootNode == null || rootLevel < level) return;
+		walk(rootNode, OctreeKey.NONE, rootLevel, false);
+	}
+
+	private void walk (N node, long key, int nodeLevel, boolean inside) {
+		if (!inside) {
+			bounds(node, key);
+			int classification = classify();
+			if (classification == OUTSIDE) return;
+			inside = classification == INSIDE;
+		}
+		// a uniform node is collected in place of the nodes below it
+		if (nodeLevel == level || node.uniform() != null) {
+			result.add(node);
+			return;
+		}
+
+		if (inside) bounds(node, key);
+		int octant = 0;
+		if (eye.x >= (min[0] + max[0]) * 0.5f) octant |= 1;
+		if (eye.z >= (min[2] + max[2]) * 0.5f) octant |= 2;
+		if (eye.y >= (min[1] + max[1]) * 0.5f) octant |= 4;
+		int mask = node.childMask();
+		for (int k = 0; k < 8; ++k) {
+			int i = k ^ octant;
+			if ((mask & (1 << i)) == 0) continue;
+			N child = node.child(i);
+			walk(child, OctreeTraversal.childKey(node, key, nodeLevel, child, i), nodeLevel - 1, inside);
+		}
+	}
+
+	private void bounds (N node, long key) {
+		if (key != OctreeKey.NONE) {
+			int size = OctreeKey.size(key);
+			min[0] = OctreeKey.x(key);
+			min[1] = OctreeKey.y(key);
+			min[2] = OctreeKey.z(key);
+			max[0] = min[0] + size;
+			max[1] = min[1] + size;
+			max[2] = min[2] + size;
+			return;
+		}
+		BoundingBox boundingBox = node.boundingBox();
+		min[0] = boundingBox.min.x;
+		min[1] = boundingBox.min.y;
+		min[2] = boundingBox.min.z;
+		max[0] = boundingBox.max.x;
+		max[1] = boundingBox.max.y;
+		max[2] = boundingBox.max.z;
+	}
+
+	/* the planes of a libGDX frustum face inwards: the corner farthest along the normal decides about outside */
+	private int classify () {
+		int classification = INSIDE;
+		for (Plane plane : frustum.planes) {
+			Vector3 normal = plane.normal;
+			float far = normal.x * (normal.x >= 0f ? max[0] : min[0]) + normal.y * (normal.y >= 0f ? max[1] : min[1])
+					+ normal.z * (normal.z >= 0f ? max[2] : min[2]) + plane.d;
+			if (far < 0f) return OUTSIDE;
+			float near = normal.x * (normal.x >= 0f ? min[0] : max[0]) + normal.y * (normal.y >= 0f ? min[1] : max[1])
+					+ normal.z * (normal.z >= 0f ? min[2] : max[2]) + plane.d;
+			if (near < 0f) classification = INTERSECTS;
+		}
+		return classification;
+	}
+}
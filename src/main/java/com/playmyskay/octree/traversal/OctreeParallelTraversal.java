@@ -0,0 +1,119 @@
+package com.playmyskay.octree.traversal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.playmyskay.octree.common.Octree;
+import com.playmyskay.octree.common.OctreeKey;
+import com.playmyskay.octree.common.OctreeNode;
+import com.playmyskay.octree.common.OctreeSnapshot;
+
+/*
+ * Map/reduce over the recorded nodes of an octree on a ForkJoinPool. The tree is split into one task per node of
+ * the key level (a chunk), every task walks its subtree with an OctreeCursor of its thread into an accumulator of
+ * its own and the accumulators are merged up the tree of tasks.
+ *
+ * The tree must not be changed during the traversal, an octree is traversed in a snapshot acquired for it.
+ */
+public class OctreeParallelTraversal<N extends OctreeNode<N>> {
+	private ForkJoinPool pool;
+	private ThreadLocal<OctreeCursor<N>> cursors = ThreadLocal.withInitial(OctreeCursor::new);
+
+	public OctreeParallelTraversal() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	public OctreeParallelTraversal(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/* the leaves intersecting the bounding box, all leaves for a null bounding box */
+	public <A> A reduce (OctreeSnapshot<N> snapshot, BoundingBox boundingBox, IOctreeReducer<N, A> reducer) {
+		OctreeTraversalSettings settings = new OctreeTraversalSettings();
+		settings.record(0);
+		return reduce(snapshot, boundingBox, settings, reducer);
+	}
+
+	public <A> A reduce (OctreeSnapshot<N> snapshot, BoundingBox boundingBox, OctreeTraversalSettings settings,
+			IOctreeReducer<N, A> reducer) {
+		return reduce(snapshot.rootNode, snapshot.curLevel, snapshot.keyLevel, boundingBox, settings, reducer);
+	}
+
+	public <A> A reduce (Octree<N, ?> octree, BoundingBox boundingBox, OctreeTraversalSettings settings,
+			IOctreeReducer<N, A> reducer) {
+		OctreeSnapshot<N> snapshot = octree.acquireSnapshot();
+		try {
+			return reduce(snapshot, boundingBox, settings, reducer);
+		} finally {
+			octree.releaseSnapshot(snapshot);
+		}
+	}
+
+	private <A> A reduce (N rootNode, int rootLevel, int splitLevel, BoundingBox boundingBox,
+			OctreeTraversalSettings settings, IOctreeReducer<N, A> reducer) {
+		if (rootNode == null) return reducer.create();
+		if (boundingBox != null && !OctreeCursor.overlaps(rootNode, OctreeKey.NONE, boundingBox)) {
+			return reducer.create();
+		}
+		Job<A> job = new Job<>();
+		job.splitLevel = splitLevel;
+		job.boundingBox = boundingBox;
+		job.settings = settings;
+		job.reducer = reducer;
+		return pool.invoke(new SubtreeTask<>(job, rootNode, OctreeKey.NONE, rootLevel));
+	}
+
+	private class Job<A> {
+		int splitLevel;
+		BoundingBox boundingBox;
+		OctreeTraversalSettings settings;
+		IOctreeReducer<N, A> reducer;
+	}
+
+	@SuppressWarnings("serial")
+	private class SubtreeTask<A> extends RecursiveTask<A> {
+		Job<A> job;
+		N node;
+		long key;
+		int level;
+
+		SubtreeTask(Job<A> job, N node, long key, int level) {
+			this.job = job;
+			this.node = node;
+			this.key = key;
+			this.level = level;
+		}
+
+		@Override
+		protected A compute () {
+			A accumulator = job.reducer.create();
+			OctreeTraversalSettings settings = job.settings;
+			if (level <= job.splitLevel || node.uniform() != null || node.stored() || settings.maxLevel > level) {
+				cursors.get().visit(node, key, level, job.boundingBox, settings, (child, childKey, childLevel) -> {
+					job.reducer.accumulate(accumulator, child, childKey, childLevel);
+					return VisitResult.CONTINUE;
+				});
+				return accumulator;
+			}
+
+			if (settings.recorded(level)) job.reducer.accumulate(accumulator, node, key, level);
+			List<SubtreeTask<A>> tasks = new ArrayList<>(8);
+			for (int mask = node.childMask(); mask != 0; mask &= mask - 1) {
+				int i = Integer.numberOfTrailingZeros(mask);
+				N child = node.child(i);
+				long childKey = OctreeTraversal.childKey(node, key, level, child, i);
+				if (job.boundingBox != null && !OctreeCursor.overlaps(child, childKey, job.boundingBox)) continue;
+				tasks.add(new SubtreeTask<>(job, child, childKey, level - 1));
+			}
+			invokeAll(tasks);
+			A result = accumulator;
+			for (SubtreeTask<A> task : tasks) {
+				result = job.reducer.merge(result, task.join());
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package com.playmyskay.octree.traversal;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.collision.Ray;
+import com.playmyskay.octree.common.Octree;
+import com.playmyskay.octree.common.OctreeKey;
+import com.playmyskay.octree.common.OctreeNode;
+import com.playmyskay.octree.common.OctreeSnapshot;
+
+/*
+ * Closest hits of many rays at once. The rays are given and the hits are returned in flat arrays, ray i has its
+ * origin and direction at 3 * i and its hit coordinates at 3 * i. The rays are sorted by the node of the key level
+ * their origin lies in and cast in packets of neighbouring rays on a ForkJoinPool, every thread reuses one
+ * OctreeRayCast, so a cast allocates nothing per ray. One batch casts one set of rays at a time.
+ *
+ * Distances are measured in multiples of the direction. A missed ray gets face -1 and an infinite distance, the
+ * faces are numbered -x, +x, -y, +y, -z, +z by their normal.
+ */
+public class OctreeRayBatch<N extends OctreeNode<N>> {
+	public static final int PACKET_SIZE = 64;
+
+	private OctreeTraversalSettings settings;
+	private ForkJoinPool pool;
+	private ThreadLocal<Worker<N>> workers;
+	private long[] order = new long[0];
+
+	private static class Worker<N extends OctreeNode<N>> {
+		OctreeRayCast<N> rayCast = new OctreeRayCast<>();
+		Ray ray = new Ray();
+	}
+
+	public OctreeRayBatch(OctreeTraversalSettings settings) {
+		this(settings, ForkJoinPool.commonPool());
+	}
+
+	public OctreeRayBatch(OctreeTraversalSettings settings, ForkJoinPool pool) {
+		this.settings = settings;
+		this.pool = pool;
+		this.workers = ThreadLocal.withInitial(Worker::new);
+	}
+
+	public OctreeTraversalSettings settings () {
+		return settings;
+	}
+
+	/* casts into a snapshot acquired for the cast, see Octree.acquireSnapshot() */
+	public void cast (Octree<N, ?> octree, float[] origins, float[] directions, float[] maxDistances, int count,
+			int[] hits, float[] distances, byte[] faces) {
+		OctreeSnapshot<N> snapshot = octree.acquireSnapshot();
+		try {
+			cast(snapshot, origins, directions, maxDistances, count, hits, distances, faces);
+		} finally {
+			octree.releaseSnapshot(snapshot);
+		}
+	}
+
+	public void cast (OctreeSnapshot<N> snapshot, float[] origins, float[] directions, float[] maxDistances,
+			int count, int[] hits, float[] distances, byte[] faces) {
+		cast(snapshot.rootNode, snapshot.curLevel, snapshot.keyLevel, origins, directions, maxDistances, count, hits,
+				distances, faces);
+	}
+
+	private void cast (N rootNode, int rootLevel, int keyLevel, float[] origins, float[] directions,
+			float[] maxDistances, int count, int[] hits, float[] distances, byte[] faces) {
+		if (count == 0) return;
+		if (rootNode == null) {
+			Arrays.fill(distances, 0, count, Float.POSITIVE_INFINITY);
+			Arrays.fill(faces, 0, count, (byte) -1);
+			return;
+		}
+
+		// the sort key is the Morton code of the node of the key level followed by the index of the ray
+		int indexBits = 32 - Integer.numberOfLeadingZeros(count - 1);
+		int mortonShift = Math.max(0, 3 * (OctreeKey.BITS - keyLevel) - (63 - indexBits));
+		if (order.length < count) order = new long[count];
+		for (int i = 0; i < count; ++i) {
+			long key = OctreeKey.encode(keyLevel, MathUtils.floor(origins[i * 3]), MathUtils.floor(origins[i * 3 + 1]),
+					MathUtils.floor(origins[i * 3 + 2]));
+			order[i] = (OctreeKey.morton(key) >>> mortonShift) << indexBits | i;
+		}
+		Arrays.sort(order, 0, count);
+
+		Job job = new Job();
+		job.rootNode = rootNode;
+		job.rootLevel = rootLevel;
+		job.indexMask = (1L << indexBits) - 1L;
+		job.origins = origins;
+		job.directions = directions;
+		job.maxDistances = maxDistances;
+		job.hits = hits;
+		job.distances = distances;
+		job.faces = faces;
+		pool.invoke(new Packets(job, 0, count));
+	}
+
+	private class Job {
+		N rootNode;
+		int rootLevel;
+		long indexMask;
+		float[] origins, directions, maxDistances;
+		int[] hits;
+		float[] distances;
+		byte[] faces;
+	}
+
+	@SuppressWarnings("serial")
+	private class Packets extends RecursiveAction {
+		Job job;
+		int from, to;
+
+		Packets(Job job, int from, int to) {
+			this.job = job;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute () {
+			if (to - from > PACKET_SIZE) {
+				// split on a packet boundary
+				int middle = from + Math.max(1, (to - from) / PACKET_SIZE / 2) * PACKET_SIZE;
+				invokeAll(new Packets(job, from, middle), new Packets(job, middle, to));
+				return;
+			}
+
+			Worker<N> worker = workers.get();
+			OctreeRayCast<N> rayCast = worker.rayCast;
+			for (int slot = from; slot < to; ++slot) {
+				int i = (int) (order[slot] & job.indexMask);
+				worker.ray.origin.set(job.origins[i * 3], job.origins[i * 3 + 1], job.origins[i * 3 + 2]);
+				worker.ray.direction.set(job.directions[i * 3], job.directions[i * 3 + 1], job.directions[i * 3 + 2]);
+				if (rayCast.cast(job.rootNode, job.rootLevel, worker.ray, job.maxDistances[i], settings)) {
+					job.hits[i * 3] = rayCast.hitX;
+					job.hits[i * 3 + 1] = rayCast.hitY;
+					job.hits[i * 3 + 2] = rayCast.hitZ;
+					job.distances[i] = rayCast.hitDistance;
+					job.faces[i] = (byte) rayCast.hitFace;
+				} else {
+					job.distances[i] = Float.POSITIVE_INFINITY;
+					job.faces[i] = -1;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,269 @@
+package com.playmyskay.octree.traversal;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.math.collision.Ray;
+import com.playmyskay.octree.common.OctreeKey;
+import com.playmyskay.octree.common.OctreeNode;
+
+/*
+ * Closest hit of a ray. The children of a node are visited front-to-back by the distance at which the ray enters
+ * them and the walk stops at the first accepted node: the boxes of siblings are disjoint, so the ray leaves a child
+ * before it enters the next one and no later sibling can hold a closer hit. With a visitor all hit nodes are
+ * streamed to it in this order instead. A subtree without any leaf passing the filter is not entered at all. The
+ * cells of a stored node are stepped through one by one along the ray.
+ */
+class OctreeRayCast<N extends OctreeNode<N>> {
+	private Ray ray;
+	private float maxDistance;
+	private OctreeTraversalSettings settings;
+	private IOctreeRayVisitor<N> visitor;
+	// entry distance, entry axis, child index and key of the hit children, 8 entries per depth
+	private float[] distances = new float[(OctreeKey.LEVEL_MAX + 1) * 8];
+	private int[] axes = new int[(OctreeKey.LEVEL_MAX + 1) * 8];
+	private int[] indices = new int[(OctreeKey.LEVEL_MAX + 1) * 8];
+	private long[] keys = new long[(OctreeKey.LEVEL_MAX + 1) * 8];
+	private float[] min = new float[3];
+	private float[] max = new float[3];
+	private Vector3 point = new Vector3();
+	private float entry;
+	private int entryAxis;
+	// cell, step, distance to the next cell boundary and between two boundaries per axis of a stored node
+	private int[] cells = new int[3];
+	private int[] steps = new int[3];
+	private float[] nexts = new float[3];
+	private float[] deltas = new float[3];
+
+	// the hit of the last cast: recorded node, its key (of the leaf for a uniform node), the coordinates of its
+	// minimum corner, the entry distance in multiples of the ray direction and the entered face
+	N hitNode;
+	long hitKey;
+	int hitX, hitY, hitZ;
+	float hitDistance;
+	int hitFace;
+
+	/* closest hit not farther than maxDistance, the ray can be changed and cast again afterwards */
+	boolean cast (N rootNode, int rootLevel, Ray ray, float maxDistance, OctreeTraversalSettings settings) {
+		hitNode = null;
+		return walk(rootNode, rootLevel, ray, maxDistance, settings, null);
+	}
+
+	/* streams the recorded nodes hit by the ray front-to-back to the visitor */
+	void visit (N rootNode, int rootLevel, Ray ray, float maxDistance, OctreeTraversalSettings settings,
+			IOctreeRayVisitor<N> visitor) {
+		walk(rootNode, rootLevel, ray, maxDistance, settings, visitor);
+		this.visitor = null;
+		this.ray = null;
+	}
+
+	private boolean walk (N rootNode, int rootLevel, Ray ray, float maxDistance, OctreeTraversalSettings settings,
+			IOctreeRayVisitor<N> visitor) {
+		this.ray = ray;
+		this.maxDistance = maxDistance;
+		this.settings = settings;
+		this.visitor = visitor;
+		if (rootNode == null || settings.filterLeaves(rootNode)) return false;
+		if (!bounds(rootNode, OctreeKey.NONE) || !enter()) return false;
+		return walk(rootNode, OctreeKey.NONE, rootLevel, 0);
+	}
+
+	IntersectionData<N> intersectionData () {
+		if (hitNode == null) return null;
+		IntersectionData<N> hit = new IntersectionData<>();
+		hit.node = hitNode;
+		hit.key = hitKey;
+		hit.point = new Vector3(ray.direction).scl(hitDistance).add(ray.origin);
+		hit.normal = new Vector3();
+		normal(hitFace, hit.normal);
+		return hit;
+	}
+
+	/* faces are numbered -x, +x, -y, +y, -z, +z by their normal */
+	static Vector3 normal (int face, Vector3 normal) {
+		float sign = (face & 1) != 0 ? 1f : -1f;
+		int axis = face >> 1;
+		return normal.set(axis == 0 ? sign : 0f, axis == 1 ? sign : 0f, axis == 2 ? sign : 0f);
+	}
+
+	/* the entered face, its normal points against the ray */
+	private int face (int axis) {
+		float direction = axis == 0 ? ray.direction.x : axis == 1 ? ray.direction.y : ray.direction.z;
+		return axis * 2 + (direction > 0f ? 0 : 1);
+	}
+
+	private boolean walk (N node, long key, int level, int depth) {
+		if (node.leaf()) return false;
+		if (settings.maxLevel == level) return false;
+		if (node.stored()) return walkStored(node, key);
+
+		// insertion sort of the hit children by their entry distance
+		int base = depth * 8;
+		int count = 0;
+		for (int mask = node.childMask(); mask != 0; mask &= mask - 1) {
+			int i = Integer.numberOfTrailingZeros(mask);
+			N child = node.child(i);
+			if (settings.filterLeaves(child)) continue;
+			long childKey = OctreeTraversal.childKey(node, key, level, child, i);
+			if (!bounds(child, childKey) || !enter()) continue;
+
+			int slot = base + count++;
+			while (slot > base && distances[slot - 1] > entry) {
+				distances[slot] = distances[slot - 1];
+				axes[slot] = axes[slot - 1];
+				indices[slot] = indices[slot - 1];
+				keys[slot] = keys[slot - 1];
+				--slot;
+			}
+			distances[slot] = entry;
+			axes[slot] = entryAxis;
+			indices[slot] = i;
+			keys[slot] = childKey;
+		}
+
+		for (int slot = base; slot < base + count; ++slot) {
+			if (distances[slot] > maxDistance) return false;
+			N child = node.child(indices[slot]);
+			// a uniform node is recorded in place of its leaves
+			boolean uniform = child.uniform() != null && settings.recordedBelow(level - 1);
+			if (uniform || settings.recorded(level - 1)) {
+				if (settings.filter(child)) continue;
+				long childKey = uniform ? leafKey(child, keys[slot], distances[slot]) : keys[slot];
+				if (visitor == null) {
+					record(child, childKey, distances[slot], axes[slot], uniform);
+					return true;
+				}
+				VisitResult result = visitor.visit(child, childKey, level - 1, distances[slot], face(axes[slot]));
+				if (result == VisitResult.STOP) return true;
+				if (result == VisitResult.SKIP) continue;
+			}
+			if (walk(child, keys[slot], level - 1, depth + 1)) return true;
+		}
+		return false;
+	}
+
+	/* steps through the cells of a stored node in the order the ray enters them, only its leaves are recorded */
+	private boolean walkStored (N node, long key) {
+		if (!settings.recorded(0) || !bounds(node, key) || !enter()) return false;
+		int size = (int) (max[0] - min[0]);
+		float distance = entry;
+		int axis = entryAxis;
+		point.set(ray.direction).scl(distance).add(ray.origin);
+		int[] cell = cells;
+		int[] step = steps;
+		float[] next = nexts;
+		float[] delta = deltas;
+		for (int a = 0; a < 3; ++a) {
+			float origin = a == 0 ? ray.origin.x : a == 1 ? ray.origin.y : ray.origin.z;
+			float direction = a == 0 ? ray.direction.x : a == 1 ? ray.direction.y : ray.direction.z;
+			float p = a == 0 ? point.x : a == 1 ? point.y : point.z;
+			cell[a] = Math.max(0, Math.min(size - 1, MathUtils.floor(p + direction * 1e-3f - min[a])));
+			step[a] = direction > 0f ? 1 : direction < 0f ? -1 : 0;
+			delta[a] = step[a] != 0 ? Math.abs(1f / direction) : Float.POSITIVE_INFINITY;
+			if (step[a] > 0) {
+				next[a] = (min[a] + cell[a] + 1 - origin) / direction;
+			} else if (step[a] < 0) {
+				next[a] = (min[a] + cell[a] - origin) / direction;
+			} else {
+				next[a] = Float.POSITIVE_INFINITY;
+			}
+		}
+
+		while (distance <= maxDistance) {
+			N leaf = node.storedLeaf(cell[0], cell[1], cell[2]);
+			if (leaf != null && !settings.filter(leaf)) {
+				long leafKey = OctreeKey.encode(0, (int) min[0] + cell[0], (int) min[1] + cell[1],
+						(int) min[2] + cell[2]);
+				if (visitor == null) {
+					record(leaf, leafKey, distance, axis, true);
+					return true;
+				}
+				if (visitor.visit(leaf, leafKey, 0, distance, face(axis)) == VisitResult.STOP) return true;
+			}
+
+			axis = next[0] < next[1] ? (next[0] < next[2] ? 0 : 2) : (next[1] < next[2] ? 1 : 2);
+			distance = next[axis];
+			cell[axis] += step[axis];
+			next[axis] += delta[axis];
+			if (cell[axis] < 0 || cell[axis] >= size) return false;
+		}
+		return false;
+	}
+
+	/* key of the leaf of a uniform node the ray enters at the given distance */
+	private long leafKey (N node, long key, float distance) {
+		bounds(node, key);
+		point.set(ray.direction).scl(distance).add(ray.origin);
+		return OctreeTraversal.leafKey(min[0], min[1], min[2], max[0], max[1], max[2], ray, point);
+	}
+
+	private void record (N node, long key, float distance, int axis, boolean uniform) {
+		if (uniform) {
+			hitX = OctreeKey.x(key);
+			hitY = OctreeKey.y(key);
+			hitZ = OctreeKey.z(key);
+		} else {
+			bounds(node, key);
+			hitX = (int) min[0];
+			hitY = (int) min[1];
+			hitZ = (int) min[2];
+		}
+		hitNode = node;
+		hitKey = key;
+		hitDistance = distance;
+		hitFace = face(axis);
+	}
+
+	private boolean bounds (N node, long key) {
+		if (key != OctreeKey.NONE) {
+			int size = OctreeKey.size(key);
+			min[0] = OctreeKey.x(key);
+			min[1] = OctreeKey.y(key);
+			min[2] = OctreeKey.z(key);
+			max[0] = min[0] + size;
+			max[1] = min[1] + size;
+			max[2] = min[2] + size;
+			return true;
+		}
+		if (!node.hasBoundingBox()) return false;
+		BoundingBox boundingBox = node.boundingBox();
+		min[0] = boundingBox.min.x;
+		min[1] = boundingBox.min.y;
+		min[2] = boundingBox.min.z;
+		max[0] = boundingBox.max.x;
+		max[1] = boundingBox.max.y;
+		max[2] = boundingBox.max.z;
+		return true;
+	}
+
+	/* slab test of the ray against min, max: sets the entry distance (0 inside the box) and its axis */
+	private boolean enter () {
+		float near = 0f;
+		float far = Float.POSITIVE_INFINITY;
+		int axis = 0;
+		for (int a = 0; a < 3; ++a) {
+			float origin = a == 0 ? ray.origin.x : a == 1 ? ray.origin.y : ray.origin.z;
+			float direction = a == 0 ? ray.direction.x : a == 1 ? ray.direction.y : ray.direction.z;
+			if (direction == 0f) {
+				if (origin < min[a] || origin > max[a]) return false;
+				continue;
+			}
+			float t1 = (min[a] - origin) / direction;
+			float t2 = (max[a] - origin) / direction;
+			if (t1 > t2) {
+				float t = t1;
+				t1 = t2;
+				t2 = t;
+			}
+			if (t1 > near) {
+				near = t1;
+				axis = a;
+			}
+			if (t2 < far) far = t2;
+			if (near > far) return false;
+		}
+		entry = near;
+		entryAxis = axis;
+		return true;
+	}
+}
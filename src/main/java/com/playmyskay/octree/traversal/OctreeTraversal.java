@@ -1,35 +1,38 @@
 package com.playmyskay.octree.traversal;
 
+import java.util.List;
+
+import com.badlogic.gdx.math.Frustum;
 import com.badlogic.gdx.math.Intersector;
+import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.BoundingBox;
 import com.badlogic.gdx.math.collision.Ray;
 import com.playmyskay.octree.common.Octree;
-import com.playmyskay.octree.common.OctreeCalc;
+import com.playmyskay.octree.common.OctreeKey;
 import com.playmyskay.octree.common.OctreeNode;
+import com.playmyskay.octree.common.OctreeSnapshot;
 
 public class OctreeTraversal {
 
-	public static <N extends OctreeNode<N>> N next (N node, Vector3 v, OctreeCalc calc) {
-		calc = calc.child();
-		if (!node.boundingBox(calc).contains(v)) {
+	public static <N extends OctreeNode<N>> N next (N node, Vector3 v) {
+		if (!node.contains(v)) {
 			return null;
 		}
 
 		for (int i = 0; i < 8; i++) {
 			if (node.child(i) == null) continue;
-			if (node.child(i).contains(v, calc)) {
+			if (node.child(i).contains(v)) {
 				return node.child(i);
 			}
-			calc.reset();
 		}
 
 		return null;
 	}
 
-	public static <N extends OctreeNode<N>> N getFromNode (N node, int levelFrom, Vector3 v, OctreeCalc calc) {
+	public static <N extends OctreeNode<N>> N getFromNode (N node, int levelFrom, Vector3 v) {
 		for (int level = levelFrom; level > 0; --level) {
-			node = next(node, v, calc);
+			node = next(node, v);
 			if (node == null) {
 				return null;
 			}
@@ -38,10 +41,20 @@ public class OctreeTraversal {
 		return node;
 	}
 
-	public static <N extends OctreeNode<N>> N getFromRoot (Octree<N, ?> octree, Vector3 v, OctreeCalc calc) {
-		N node = octree.rootNode;
-		for (int level = octree.curLevel; level > 0; --level) {
-			node = next(node, v, calc);
+	/* the queries of an octree read a snapshot acquired for the query, see Octree.acquireSnapshot() */
+	public static <N extends OctreeNode<N>> N getFromRoot (Octree<N, ?> octree, Vector3 v) {
+		OctreeSnapshot<N> snapshot = octree.acquireSnapshot();
+		try {
+			return getFromRoot(snapshot, v);
+		} finally {
+			octree.releaseSnapshot(snapshot);
+		}
+	}
+
+	public static <N extends OctreeNode<N>> N getFromRoot (OctreeSnapshot<N> snapshot, Vector3 v) {
+		N node = snapshot.rootNode;
+		for (int level = snapshot.curLevel; level > 0; --level) {
+			node = next(node, v);
 			if (node == null) {
 				return null;
 			}
@@ -50,87 +63,125 @@ public class OctreeTraversal {
 		return node;
 	}
 
-	public static <N extends OctreeNode<N>> void intersects (N node, Ray ray, int level, IntersectionRecorder<N> ir,
-			OctreeCalc calc) {
-		if (node == null) return;
-		if (ir.settings.maxLevel == level) return;
-		if (node.leaf()) return;
-		calc.reset();
-		for (int i = 0; i < 8; i++) {
-			if (node.childs() == null) continue;
-			if (node.child(i) == null) continue;
-			if (Intersector.intersectRayBoundsFast(ray, node.child(i).boundingBox(calc))) {
-				if (ir.settings().recordLevelSet.contains(level - 1)) {
-					Vector3 point = new Vector3();
-					if (Intersector.intersectRayBounds(ray, node.child(i).boundingBox(calc), point)) {
-						if (!ir.settings().filter(node.child(i))) {
-							IntersectionData<N> id = new IntersectionData<>();
-							id.node = node.child(i);
-							id.point = point;
-							ir.intersections.add(id);
-						}
-					}
-				} else {
-					intersects(node.child(i), ray, level - 1, ir, calc);
-				}
+	/* records the nodes hit by the ray front-to-back */
+	public static <N extends OctreeNode<N>> void intersects (N node, Ray ray, int level, IntersectionRecorder<N> ir) {
+		new OctreeCursor<N>().visit(node, level, ray, Float.POSITIVE_INFINITY, ir.settings(),
+				(child, key, childLevel, distance, face) -> {
+					IntersectionData<N> id = new IntersectionData<>();
+					id.node = child;
+					id.point = new Vector3(ray.direction).scl(distance).add(ray.origin);
+					id.key = key;
+					ir.intersections.add(id);
+					return VisitResult.SKIP;
+				});
+	}
+
+	/* key of a child without an own bounding box, derived from the key or the bounding box of the node */
+	static <N extends OctreeNode<N>> long childKey (N node, long key, int level, N child, int index) {
+		if (child.hasBoundingBox()) return OctreeKey.NONE;
+		if (key == OctreeKey.NONE) {
+			if (node.hasBoundingBox()) {
+				Vector3 min = node.boundingBox().min;
+				key = OctreeKey.encode(level, (int) min.x, (int) min.y, (int) min.z);
+			} else {
+				key = node.key();
 			}
-			calc.reset();
 		}
+		if (key == OctreeKey.NONE) return OctreeKey.NONE;
+		return OctreeKey.child(key, index);
+	}
+
+	static long leafKey (float minX, float minY, float minZ, float maxX, float maxY, float maxZ, Ray ray,
+			Vector3 point) {
+		int x = leafCoordinate(point.x + ray.direction.x * 1e-3f, minX, maxX);
+		int y = leafCoordinate(point.y + ray.direction.y * 1e-3f, minY, maxY);
+		int z = leafCoordinate(point.z + ray.direction.z * 1e-3f, minZ, maxZ);
+		return OctreeKey.encode(0, x, y, z);
+	}
+
+	private static int leafCoordinate (float v, float min, float max) {
+		return Math.max((int) min, Math.min((int) max - 1, MathUtils.floor(v)));
 	}
 
 	public static <N extends OctreeNode<N>> void intersects (N node, BoundingBox boundingBox, int level,
 			IntersectionRecorder<N> ir) {
-		if (node == null) return;
+		new OctreeCursor<N>().visit(node, level, boundingBox, ir.settings(), recorder(ir));
+	}
 
-		if (ir.settings().recordLevelSet.contains(level)) {
+	private static <N extends OctreeNode<N>> IOctreeVisitor<N> recorder (IntersectionRecorder<N> ir) {
+		return (node, key, level) -> {
 			IntersectionData<N> entry = new IntersectionData<>();
 			entry.node = node;
+			entry.key = key;
 			ir.intersections.add(entry);
-		}
+			return VisitResult.CONTINUE;
+		};
+	}
 
-		if (ir.settings.maxLevel > level) return;
-		for (int i = 0; i < 8; i++) {
-			if (node.childs() == null) continue;
-			if (node.child(i) == null) continue;
-			if (boundingBox.contains(node.child(i).boundingBox())
-					|| boundingBox.intersects(node.child(i).boundingBox())) {
-				intersects(node.child(i), boundingBox, level - 1, ir);
-			}
+	public static <N extends OctreeNode<N>> IntersectionRecorder<N> getIntersections (Octree<N, ?> octree, Ray ray,
+			OctreeTraversalSettings settings) {
+		if (octree == null) return null;
+		OctreeSnapshot<N> snapshot = octree.acquireSnapshot();
+		try {
+			return getIntersections(snapshot, ray, settings);
+		} finally {
+			octree.releaseSnapshot(snapshot);
 		}
 	}
 
-	public static <N extends OctreeNode<N>> IntersectionRecorder<N> getIntersections (Octree<N, ?> octree, Ray ray,
-			OctreeTraversalSettings settings, OctreeCalc calc) {
-		if (octree == null || octree.rootNode == null) return null;
-		if (!Intersector.intersectRayBoundsFast(ray, octree.rootNode.boundingBox(calc))) {
+	public static <N extends OctreeNode<N>> IntersectionRecorder<N> getIntersections (OctreeSnapshot<N> snapshot,
+			Ray ray, OctreeTraversalSettings settings) {
+		if (snapshot == null) return null;
+		return getIntersections(snapshot.rootNode, snapshot.curLevel, ray, settings);
+	}
+
+	private static <N extends OctreeNode<N>> IntersectionRecorder<N> getIntersections (N rootNode, int curLevel,
+			Ray ray, OctreeTraversalSettings settings) {
+		if (rootNode == null) return null;
+		if (!Intersector.intersectRayBoundsFast(ray, rootNode.scratchBoundingBox())) {
 			return null;
 		}
 
 		IntersectionRecorder<N> ir = new IntersectionRecorder<N>();
 		ir.settings(settings);
-		intersects(octree.rootNode, ray, octree.curLevel, ir, calc);
+		intersects(rootNode, ray, curLevel, ir);
 
 		return ir;
 	}
 
-	public static <N extends OctreeNode<N>> IntersectionRecorder<N> getIntersections (Octree<N, ?> octree, Ray ray,
-			OctreeCalc calc) {
+	public static <N extends OctreeNode<N>> IntersectionRecorder<N> getIntersections (Octree<N, ?> octree, Ray ray) {
 		OctreeTraversalSettings settings = new OctreeTraversalSettings();
-		settings.recordLevelSet.add(0);
-		return getIntersections(octree, ray, settings, calc);
+		settings.record(0);
+		return getIntersections(octree, ray, settings);
 	}
 
 	public static <N extends OctreeNode<N>> IntersectionRecorder<N> getIntersections (Octree<N, ?> octree,
 			BoundingBox boundingBox, OctreeTraversalSettings settings) {
-		if (octree == null || octree.rootNode == null) return null;
-		if (!boundingBox.intersects(octree.rootNode.boundingBox())
-				&& !boundingBox.contains(octree.rootNode.boundingBox())) {
+		if (octree == null) return null;
+		OctreeSnapshot<N> snapshot = octree.acquireSnapshot();
+		try {
+			return getIntersections(snapshot, boundingBox, settings);
+		} finally {
+			octree.releaseSnapshot(snapshot);
+		}
+	}
+
+	public static <N extends OctreeNode<N>> IntersectionRecorder<N> getIntersections (OctreeSnapshot<N> snapshot,
+			BoundingBox boundingBox, OctreeTraversalSettings settings) {
+		if (snapshot == null) return null;
+		return getIntersections(snapshot.rootNode, snapshot.curLevel, boundingBox, settings);
+	}
+
+	private static <N extends OctreeNode<N>> IntersectionRecorder<N> getIntersections (N rootNode, int curLevel,
+			BoundingBox boundingBox, OctreeTraversalSettings settings) {
+		if (rootNode == null) return null;
+		if (!boundingBox.intersects(rootNode.boundingBox()) && !boundingBox.contains(rootNode.boundingBox())) {
 			return null;
 		}
 
 		IntersectionRecorder<N> ir = new IntersectionRecorder<N>();
 		ir.settings(settings);
-		intersects(octree.rootNode, boundingBox, octree.curLevel, ir);
+		intersects(rootNode, boundingBox, curLevel, ir);
 
 		return ir;
 	}
@@ -138,37 +189,76 @@ public class OctreeTraversal {
 	public static <N extends OctreeNode<N>> IntersectionRecorder<N> getIntersections (Octree<N, ?> octree,
 			BoundingBox boundingBox) {
 		OctreeTraversalSettings settings = new OctreeTraversalSettings();
-		settings.recordLevelSet.add(0);
+		settings.record(0);
 		return getIntersections(octree, boundingBox, settings);
 	}
 
+	/* closest recorded node hit by the ray with the hit point and the normal of the entered face */
 	public static <N extends OctreeNode<N>> IntersectionData<N> getClosestIntersection (Octree<N, ?> octree, Ray ray,
-			OctreeTraversalSettings settings, OctreeCalc calc) {
-		IntersectionRecorder<N> ir = getIntersections(octree, ray, settings, calc);
-		if (ir != null && !ir.intersections.isEmpty()) {
-			if (ir.intersections.size() == 1) {
-				return ir.intersections.get(0);
-			}
+			OctreeTraversalSettings settings) {
+		if (octree == null) return null;
+		OctreeSnapshot<N> snapshot = octree.acquireSnapshot();
+		try {
+			return getClosestIntersection(snapshot, ray, settings);
+		} finally {
+			octree.releaseSnapshot(snapshot);
+		}
+	}
 
-			IntersectionData<N> nearestEntry = null;
-			float distance = 0f;
-			float nearestDistance = Float.POSITIVE_INFINITY;
-			for (IntersectionData<N> entry : ir.intersections) {
-				distance = entry.point.dst2(ray.origin);
-				if (distance < nearestDistance) {
-					nearestEntry = entry;
-					nearestDistance = distance;
-				}
-			}
+	public static <N extends OctreeNode<N>> IntersectionData<N> getClosestIntersection (OctreeSnapshot<N> snapshot,
+			Ray ray, OctreeTraversalSettings settings) {
+		if (snapshot == null) return null;
+		OctreeRayCast<N> rayCast = new OctreeRayCast<N>();
+		rayCast.cast(snapshot.rootNode, snapshot.curLevel, ray, Float.POSITIVE_INFINITY, settings);
+		return rayCast.intersectionData();
+	}
 
-			return nearestEntry;
+	/* nodes of the given level inside the frustum, front-to-back as seen from the eye */
+	public static <N extends OctreeNode<N>> List<N> getVisibleNodes (Octree<N, ?> octree, Frustum frustum,
+			Vector3 eye, int level, List<N> result) {
+		if (octree == null) return result;
+		OctreeSnapshot<N> snapshot = octree.acquireSnapshot();
+		try {
+			return getVisibleNodes(snapshot, frustum, eye, level, result);
+		} finally {
+			octree.releaseSnapshot(snapshot);
 		}
-		return null;
+	}
+
+	/*
+	 * Attached nodes of the key level inside the frustum, front-to-back as seen from the eye. The nodes found in the
+	 * snapshot are replaced by the nodes attached at their positions, the ones removed meanwhile are left out.
+	 */
+	public static <N extends OctreeNode<N>> List<N> getVisibleChunks (Octree<N, ?> octree, Frustum frustum,
+			Vector3 eye, List<N> result) {
+		if (octree == null) return result;
+		int start = result.size();
+		OctreeSnapshot<N> snapshot = octree.acquireSnapshot();
+		try {
+			getVisibleNodes(snapshot, frustum, eye, snapshot.keyLevel, result);
+			int kept = start;
+			for (int i = start; i < result.size(); ++i) {
+				Vector3 min = result.get(i).boundingBox().min;
+				N chunk = octree.getChunk((int) min.x, (int) min.y, (int) min.z);
+				if (chunk != null) result.set(kept++, chunk);
+			}
+			result.subList(kept, result.size()).clear();
+			return result;
+		} finally {
+			octree.releaseSnapshot(snapshot);
+		}
+	}
+
+	public static <N extends OctreeNode<N>> List<N> getVisibleNodes (OctreeSnapshot<N> snapshot, Frustum frustum,
+			Vector3 eye, int level, List<N> result) {
+		if (snapshot == null) return result;
+		new OctreeFrustumQuery<N>(frustum, eye, level, result).query(snapshot.rootNode, snapshot.curLevel);
+		return result;
 	}
 
 	public static <N extends OctreeNode<N>> IntersectionData<N> getIntersectedNormal (Octree<N, ?> octree, Ray ray,
-			OctreeTraversalSettings settings, OctreeCalc calc) {
-		IntersectionData<N> entry = OctreeTraversal.getClosestIntersection(octree, ray, settings, calc);
+			OctreeTraversalSettings settings) {
+		IntersectionData<N> entry = OctreeTraversal.getClosestIntersection(octree, ray, settings);
 		if (entry == null) return null;
 		return entry;
 	}
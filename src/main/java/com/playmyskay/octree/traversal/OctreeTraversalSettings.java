@@ -1,14 +1,32 @@
 package com.playmyskay.octree.traversal;
 
-import java.util.TreeSet;
-
 public class OctreeTraversalSettings {
 	public int maxLevel = 0;
-	public TreeSet<Integer> recordLevelSet = new TreeSet<>();
+	// bit i is set when the nodes of level i are recorded
+	public int recordLevels = 0;
 	public IOctreeNodeFilter filter;
 
+	public void record (int level) {
+		recordLevels |= 1 << level;
+	}
+
+	public boolean recorded (int level) {
+		return level >= 0 && (recordLevels & (1 << level)) != 0;
+	}
+
+	/* true if any level below the given one is recorded */
+	public boolean recordedBelow (int level) {
+		return level > 0 && (recordLevels & ((1 << level) - 1)) != 0;
+	}
+
 	public boolean filter (Object node) {
 		if (filter == null) return false;
 		return filter.filter(node);
 	}
+
+	/* true if only the leaves are recorded and none of them below the node passes the filter */
+	public boolean filterLeaves (Object node) {
+		if (filter == null || recordLevels != 1) return false;
+		return filter.filterLeaves(node);
+	}
 }
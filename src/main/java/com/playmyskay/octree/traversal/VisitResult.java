@@ -0,0 +1,6 @@
+package com.playmyskay.octree.traversal;
+
+/* answer of a visitor: descend into the children of the node, skip them or stop the traversal */
+public enum VisitResult {
+	CONTINUE, SKIP, STOP
+}
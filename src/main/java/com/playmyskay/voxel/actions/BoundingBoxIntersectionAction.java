@@ -1,10 +1,9 @@
 package com.playmyskay.voxel.actions;
 
-import java.util.Arrays;
-import java.util.TreeSet;
-
 import com.badlogic.gdx.math.collision.BoundingBox;
+import com.playmyskay.octree.traversal.IOctreeVisitor;
 import com.playmyskay.octree.traversal.IntersectionRecorder;
+import com.playmyskay.octree.traversal.OctreeCursor;
 import com.playmyskay.octree.traversal.OctreeTraversal;
 import com.playmyskay.voxel.actions.common.Action;
 import com.playmyskay.voxel.actions.common.ActionData;
@@ -13,20 +12,36 @@ import com.playmyskay.voxel.level.VoxelLevel;
 
 public class BoundingBoxIntersectionAction extends Action {
 	private BoundingBox boundingBox;
-	private TreeSet<Integer> recordLevelSet = new TreeSet<>();
+	private int recordLevels = 0;
 	private int maxLevel = 0;
+	// streams the intersected nodes to the visitor instead of collecting them in the action data
+	private IOctreeVisitor<VoxelLevel> visitor;
+	private OctreeCursor<VoxelLevel> cursor;
 
 	public BoundingBoxIntersectionAction(Integer[] recordLevels, BoundingBox boundingBox, int maxLevel) {
-		this.recordLevelSet.addAll(Arrays.asList(recordLevels));
+		for (Integer level : recordLevels) {
+			this.recordLevels |= 1 << level;
+		}
 		this.boundingBox = boundingBox;
 		this.maxLevel = maxLevel;
 	}
 
+	public BoundingBoxIntersectionAction(Integer[] recordLevels, BoundingBox boundingBox, int maxLevel,
+			IOctreeVisitor<VoxelLevel> visitor) {
+		this(recordLevels, boundingBox, maxLevel);
+		this.visitor = visitor;
+		this.cursor = new OctreeCursor<>();
+	}
+
 	@Override
 	public ActionResult run (ActionData actionData) {
 		actionData.settings().maxLevel = maxLevel;
-		actionData.settings().recordLevelSet.clear();
-		actionData.settings().recordLevelSet.addAll(recordLevelSet);
+		actionData.settings().recordLevels = recordLevels;
+
+		if (visitor != null) {
+			cursor.visit(actionData.octree(), boundingBox, actionData.settings(), visitor);
+			return ActionResult.OK;
+		}
 
 		IntersectionRecorder<VoxelLevel> ir = OctreeTraversal.getIntersections(actionData.octree(), boundingBox,
 				actionData.settings());
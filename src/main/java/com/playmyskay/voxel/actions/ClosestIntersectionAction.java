@@ -1,8 +1,9 @@
 package com.playmyskay.voxel.actions;
 
-import com.playmyskay.octree.common.OctreeCalc;
-import com.playmyskay.octree.common.OctreeCalcPoolManager;
+import com.playmyskay.octree.common.OctreeSnapshot;
+import com.playmyskay.octree.traversal.IOctreeRayVisitor;
 import com.playmyskay.octree.traversal.IntersectionData;
+import com.playmyskay.octree.traversal.OctreeCursor;
 import com.playmyskay.octree.traversal.OctreeTraversal;
 import com.playmyskay.voxel.actions.common.Action;
 import com.playmyskay.voxel.actions.common.ActionData;
@@ -11,12 +12,14 @@ import com.playmyskay.voxel.actions.filters.VoxelLevelFilter;
 import com.playmyskay.voxel.level.VoxelLevel;
 
 /*
- * This action determines the intersected voxel(s) which are hit by the given ray.
+ * This action determines the intersected voxel(s) which are hit by the given ray. With a visitor all hit voxels
+ * are streamed to it front-to-back until it stops, nothing is added to the action data.
  */
 
 public class ClosestIntersectionAction extends Action {
 	private VoxelLevelFilter filter;
-	private OctreeCalc calc = OctreeCalcPoolManager.obtain();
+	private IOctreeRayVisitor<VoxelLevel> visitor;
+	private OctreeCursor<VoxelLevel> cursor;
 
 	public ClosestIntersectionAction() {
 	}
@@ -25,16 +28,32 @@ public class ClosestIntersectionAction extends Action {
 		this.filter = filter;
 	}
 
+	public ClosestIntersectionAction(VoxelLevelFilter filter, IOctreeRayVisitor<VoxelLevel> visitor) {
+		this.filter = filter;
+		this.visitor = visitor;
+		this.cursor = new OctreeCursor<>();
+	}
+
 	@Override
 	public ActionResult run (ActionData actionData) {
-		actionData.settings().recordLevelSet.clear();
-		actionData.settings().recordLevelSet.add(0);
+		actionData.settings().recordLevels = 0;
+		actionData.settings().record(0);
 		actionData.settings().filter = filter;
 
-		calc.reset();
-		calc.octree(actionData.octree());
-		IntersectionData<VoxelLevel> intersectionData = OctreeTraversal.getClosestIntersection(actionData.octree(),
-				actionData.ray(), actionData.settings(), calc);
+		// the snapshot is stable while chunks are attached and removed by the chunk manager
+		OctreeSnapshot<VoxelLevel> snapshot = actionData.octree().acquireSnapshot();
+		IntersectionData<VoxelLevel> intersectionData;
+		try {
+			if (visitor != null) {
+				cursor.visit(snapshot, actionData.ray(), Float.POSITIVE_INFINITY, actionData.settings(), visitor);
+				return ActionResult.OK;
+			}
+
+			intersectionData = OctreeTraversal.getClosestIntersection(snapshot, actionData.ray(),
+					actionData.settings());
+		} finally {
+			actionData.octree().releaseSnapshot(snapshot);
+		}
 		if (intersectionData == null) return ActionResult.CONTINUE;
 		if (intersectionData.node == null) return ActionResult.CONTINUE;
 
@@ -45,6 +64,5 @@ public class ClosestIntersectionAction extends Action {
 
 	@Override
 	public void dispose () {
-		OctreeCalcPoolManager.free(calc);
 	}
 }
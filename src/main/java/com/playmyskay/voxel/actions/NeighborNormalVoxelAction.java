@@ -2,8 +2,7 @@ package com.playmyskay.voxel.actions;
 
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.BoundingBox;
-import com.playmyskay.octree.common.OctreeCalc;
-import com.playmyskay.octree.common.OctreeCalcPoolManager;
+import com.playmyskay.octree.common.OctreeScratch;
 import com.playmyskay.octree.traversal.IntersectionData;
 import com.playmyskay.voxel.actions.common.Action;
 import com.playmyskay.voxel.actions.common.ActionData;
@@ -16,14 +15,14 @@ import com.playmyskay.voxel.level.VoxelLevel;
  */
 
 public class NeighborNormalVoxelAction extends Action {
-	private OctreeCalc calc = OctreeCalcPoolManager.obtain();
-
-	public static Vector3 calculateNormal (IntersectionData<VoxelLevel> entry, OctreeCalc calc) {
-		BoundingBox boundindBox = entry.node.boundingBox(calc);
-		Vector3 cnt = boundindBox.getCenter(new Vector3());
+	public static Vector3 calculateNormal (IntersectionData<VoxelLevel> entry) {
+		OctreeScratch scratch = OctreeScratch.get();
+		long mark = scratch.mark();
+		BoundingBox boundindBox = entry.scratchBoundingBox();
+		Vector3 cnt = boundindBox.getCenter(scratch.vector());
 
 		// Build direction vector via difference
-		Vector3 direction = new Vector3().set(entry.point).sub(cnt);
+		Vector3 direction = scratch.vector().set(entry.point).sub(cnt);
 
 		// find the intersected face of the bounding box
 		int bestIndex = -1;
@@ -36,24 +35,26 @@ public class NeighborNormalVoxelAction extends Action {
 				bestIndex = index;
 			}
 		}
+		scratch.release(mark);
 
 		return VoxelConstants.normals[bestIndex];
 	}
 
 	@Override
 	public ActionResult run (ActionData actionData) {
-		calc.reset();
-		calc.octree(actionData.octree());
+		OctreeScratch scratch = OctreeScratch.get();
 		actionData.intersectionDataList().forEach(intersectionData -> {
-			intersectionData.normal = calculateNormal(intersectionData, calc);
+			// the closest intersection already knows the entered face
+			if (intersectionData.normal == null) intersectionData.normal = calculateNormal(intersectionData);
+			long mark = scratch.mark();
 			actionData.pointList()
-					.add(intersectionData.node.boundingBox(calc).getCenter(calc.vector()).add(intersectionData.normal));
+					.add(intersectionData.scratchBoundingBox().getCenter(new Vector3()).add(intersectionData.normal));
+			scratch.release(mark);
 		});
 		return ActionResult.OK;
 	}
 
 	@Override
 	public void dispose () {
-		OctreeCalcPoolManager.free(calc);
 	}
 }
@@ -1,6 +1,7 @@
 package com.playmyskay.voxel.actions;
 
-import com.badlogic.gdx.math.Vector3;
+import com.playmyskay.octree.common.OctreeBatch;
+import com.playmyskay.octree.common.OctreeKey;
 import com.playmyskay.octree.common.OctreeNodeDescriptor.BaseActionType;
 import com.playmyskay.voxel.actions.common.Action;
 import com.playmyskay.voxel.actions.common.ActionData;
@@ -10,6 +11,7 @@ import com.playmyskay.voxel.level.VoxelLevel;
 
 public class RemoveNodesAction extends Action {
 	private VoxelDescriptor descriptor;
+	private OctreeBatch<VoxelLevel, VoxelDescriptor> batch = new OctreeBatch<>();
 
 	public RemoveNodesAction() {
 		this.descriptor = new VoxelDescriptor(BaseActionType.remove);
@@ -17,15 +19,18 @@ public class RemoveNodesAction extends Action {
 
 	@Override
 	public ActionResult run (ActionData actionData) {
-		Vector3 cnt = new Vector3();
 		for (VoxelLevel node : actionData.nodeList()) {
-			actionData.octree().setNode(node.boundingBox().getCenter(cnt), descriptor);
+			long key = node.key();
+			batch.add(OctreeKey.x(key), OctreeKey.y(key), OctreeKey.z(key), descriptor);
 		}
+		actionData.octree().applyBatch(batch);
+		batch.clear();
 		return ActionResult.OK;
 	}
 
 	@Override
 	public void dispose () {
+
 	}
 
 }
@@ -1,6 +1,7 @@
 package com.playmyskay.voxel.actions;
 
-import com.badlogic.gdx.math.Vector3;
+import com.playmyskay.octree.common.OctreeBatch;
+import com.playmyskay.octree.common.OctreeKey;
 import com.playmyskay.octree.traversal.IntersectionData;
 import com.playmyskay.voxel.actions.common.Action;
 import com.playmyskay.voxel.actions.common.ActionData;
@@ -10,6 +11,7 @@ import com.playmyskay.voxel.level.VoxelLevel;
 
 public class SetIntersectedNodesAction extends Action {
 	private VoxelDescriptor descriptor;
+	private OctreeBatch<VoxelLevel, VoxelDescriptor> batch = new OctreeBatch<>();
 
 	public SetIntersectedNodesAction(VoxelDescriptor descriptor) {
 		this.descriptor = descriptor;
@@ -18,9 +20,14 @@ public class SetIntersectedNodesAction extends Action {
 	@Override
 	public ActionResult run (ActionData actionData) {
 		for (IntersectionData<VoxelLevel> intersectionData : actionData.intersectionDataList()) {
-			actionData.nodeList().add(actionData.octree()
-					.setNode(intersectionData.node.boundingBox().getCenter(new Vector3()), descriptor));
+			long key = intersectionData.key();
+			batch.add(OctreeKey.x(key), OctreeKey.y(key), OctreeKey.z(key), descriptor);
 		}
+		actionData.octree().applyBatch(batch);
+		for (int i = 0; i < batch.size(); ++i) {
+			if (batch.node(i) != null) actionData.nodeList().add(batch.node(i));
+		}
+		batch.clear();
 		return ActionResult.OK;
 	}
 
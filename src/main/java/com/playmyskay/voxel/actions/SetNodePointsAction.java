@@ -1,13 +1,17 @@
 package com.playmyskay.voxel.actions;
 
+import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector3;
+import com.playmyskay.octree.common.OctreeBatch;
 import com.playmyskay.voxel.actions.common.Action;
 import com.playmyskay.voxel.actions.common.ActionData;
 import com.playmyskay.voxel.actions.common.ActionResult;
 import com.playmyskay.voxel.common.descriptors.VoxelDescriptor;
+import com.playmyskay.voxel.level.VoxelLevel;
 
 public class SetNodePointsAction extends Action {
 	private VoxelDescriptor descriptor;
+	private OctreeBatch<VoxelLevel, VoxelDescriptor> batch = new OctreeBatch<>();
 
 	public SetNodePointsAction(VoxelDescriptor descriptor) {
 		this.descriptor = descriptor;
@@ -16,8 +20,13 @@ public class SetNodePointsAction extends Action {
 	@Override
 	public ActionResult run (ActionData actionData) {
 		for (Vector3 point : actionData.pointList()) {
-			actionData.nodeList().add(actionData.octree().setNode(point, descriptor));
+			batch.add(MathUtils.floor(point.x), MathUtils.floor(point.y), MathUtils.floor(point.z), descriptor);
 		}
+		actionData.octree().applyBatch(batch);
+		for (int i = 0; i < batch.size(); ++i) {
+			if (batch.node(i) != null) actionData.nodeList().add(batch.node(i));
+		}
+		batch.clear();
 		return ActionResult.OK;
 	}
 
@@ -13,6 +13,19 @@ public abstract class VoxelLevelFilter implements IOctreeNodeFilter {
 		return false;
 	}
 
+	@Override
+	public boolean filterLeaves (Object node) {
+		if (node != null && node instanceof VoxelLevel) {
+			return filterLeaves((VoxelLevel) node);
+		}
+		return false;
+	}
+
 	protected abstract boolean filter (VoxelLevel voxelLevel);
 
+	/* decided by the summary of the node, see VoxelLevel.usageMask() */
+	protected boolean filterLeaves (VoxelLevel voxelLevel) {
+		return false;
+	}
+
 }
@@ -1,17 +1,17 @@
 package com.playmyskay.voxel.actions.filters;
 
-import java.util.HashSet;
-import java.util.Set;
-
 import com.playmyskay.voxel.level.VoxelLevel;
-import com.playmyskay.voxel.level.VoxelLevelChunk;
 import com.playmyskay.voxel.level.VoxelLevelEntity;
-import com.playmyskay.voxel.level.VoxelLevelTools;
 import com.playmyskay.voxel.type.VoxelUsageType;
 
+/*
+ * Filters out the voxels of the added usage types. The types are compiled into a bitmask, which is tested against
+ * the usage type of a voxel and against the usage types in the summary of a subtree.
+ */
 public class VoxelTypeFilter extends VoxelLevelFilter {
 
-	private Set<VoxelUsageType> voxelTypeSet = new HashSet<>();
+	// bit voxelType.ordinal() is set for every filtered usage type
+	private int usageMask;
 
 	public VoxelTypeFilter() {
 
@@ -22,21 +22,22 @@ public class VoxelTypeFilter extends VoxelLevelFilter {
 	}
 
 	public void add (VoxelUsageType voxelType) {
-		voxelTypeSet.add(voxelType);
+		usageMask |= 1 << voxelType.ordinal();
+	}
+
+	public int usageMask () {
+		return usageMask;
 	}
 
 	@Override
 	protected boolean filter (VoxelLevel voxelLevel) {
-		if (voxelLevel instanceof VoxelLevelEntity) {
-			VoxelLevelChunk chunk = VoxelLevelTools.getChunkLevel(voxelLevel);
-			if (chunk != null) {
-				for (VoxelUsageType voxelType : voxelTypeSet) {
-					if (((VoxelLevelEntity) voxelLevel).descriptor.voxelType == voxelType) {
-						return true;
-					}
-				}
-			}
-		}
-		return false;
+		VoxelLevel entity = voxelLevel.uniform() != null ? voxelLevel.uniform() : voxelLevel;
+		return entity instanceof VoxelLevelEntity && (entity.usageMask() & usageMask) != 0;
+	}
+
+	/* no usage type below the node is left over by the filter */
+	@Override
+	protected boolean filterLeaves (VoxelLevel voxelLevel) {
+		return (voxelLevel.usageMask() & ~usageMask) == 0;
 	}
 }
@@ -1,5 +1,8 @@
 package com.playmyskay.voxel.common;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.playmyskay.octree.common.IOctreeNodeProvider;
 import com.playmyskay.voxel.level.VoxelLevel;
 import com.playmyskay.voxel.level.VoxelLevelChunk;
@@ -21,7 +24,7 @@ public class VoxelNodeProvider implements IOctreeNodeProvider<VoxelLevel> {
 
 	@Override
 	public VoxelLevel[] createArray (int level, int size) {
-		return new VoxelLevel[size];
+		return poolManager.obtainArray(size);
 	}
 
 	@Override
@@ -31,15 +34,49 @@ public class VoxelNodeProvider implements IOctreeNodeProvider<VoxelLevel> {
 		return -1;
 	}
 
+	@Override
+	public boolean compact () {
+		return VoxelWorld.COMPACT_CHILDS;
+	}
+
+	@Override
+	public int pooled (Class<?> clazz) {
+		return poolManager.pooled(clazz);
+	}
+
+	@Override
 	public void free (VoxelLevel node) {
-//		if (!node.leaf() && node.childs() != null) {
-//			for (VoxelLevel child : node.childs()) {
-//				if (child == null) continue;
-//				free(child);
-//			}
-//			node.childs(null);
-//		}
+		// the subtree is freed by the octree (see Octree.reclaim()), only the child array goes along with the node
+		VoxelLevel[] childs = node.leaf() ? null : node.childs();
+		node.reset();
+		if (childs != null) poolManager.freeArray(childs);
 		poolManager.free(node);
 	}
 
+	@Override
+	public void free (List<VoxelLevel> nodes) {
+		List<VoxelLevel[]> arrays = new ArrayList<>();
+		for (VoxelLevel node : nodes) {
+			VoxelLevel[] childs = node.leaf() ? null : node.childs();
+			node.reset();
+			if (childs != null) arrays.add(childs);
+		}
+		poolManager.freeArrays(arrays);
+		poolManager.freeAll(nodes);
+	}
+
+	/* releases the pooled nodes which have not been needed for a while, see VoxelLevelPool.trim() */
+	public int trim () {
+		return poolManager.trim();
+	}
+
+	public VoxelLevelPoolManager poolManager () {
+		return poolManager;
+	}
+
+	/* returns the nodes cached by the calling thread, see MagazinePool */
+	public void flush () {
+		poolManager.flush();
+	}
+
 }
\ No newline at end of file
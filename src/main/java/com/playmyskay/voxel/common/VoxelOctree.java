@@ -1,15 +1,126 @@
 package com.playmyskay.voxel.common;
 
+import java.util.List;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
 import com.playmyskay.octree.common.Octree;
+import com.playmyskay.octree.common.OctreeInterner;
+import com.playmyskay.octree.common.OctreeKey;
+import com.playmyskay.octree.common.OctreeSnapshot;
+import com.playmyskay.octree.traversal.IOctreeReducer;
+import com.playmyskay.octree.traversal.OctreeParallelTraversal;
+import com.playmyskay.octree.traversal.OctreeTraversal;
+import com.playmyskay.voxel.common.descriptors.RemoveVoxelDescriptor;
 import com.playmyskay.voxel.common.descriptors.VoxelDescriptor;
 import com.playmyskay.voxel.level.VoxelLevel;
+import com.playmyskay.voxel.level.VoxelLevelChunk;
+import com.playmyskay.voxel.level.VoxelLevelEntity;
+import com.playmyskay.voxel.look.VoxelLookType;
+import com.playmyskay.voxel.type.VoxelTypeRegistry;
 import com.playmyskay.voxel.world.VoxelWorld;
 
 public class VoxelOctree extends Octree<VoxelLevel, VoxelDescriptor> {
+	private OctreeInterner<VoxelLevel> interner = new OctreeInterner<>();
+	private OctreeParallelTraversal<VoxelLevel> parallelTraversal = new OctreeParallelTraversal<>();
 
 	public VoxelOctree(VoxelNodeProvider provider) {
 		super(VoxelWorld.CHUNK_LEVEL + 1);
 		setNodeProvider(provider);
+		linearIndex(VoxelWorld.LINEAR_OCTREE);
+	}
+
+	public VoxelLevel remove (int x, int y, int z) {
+		return remove(x, y, z, RemoveVoxelDescriptor.getInstance());
+	}
+
+	/* shares the subtrees of the chunk with equal subtrees of the chunks compacted before */
+	public void compact (VoxelLevelChunk chunk) {
+		Vector3 min = chunk.boundingBox().min;
+		deduplicate((int) min.x, (int) min.y, (int) min.z, interner);
+	}
+
+	/* statistics of the compaction, see OctreeInterner.savedBytes() */
+	public OctreeInterner<VoxelLevel> interner () {
+		return interner;
+	}
+
+	/* attached chunks inside the view frustum of the camera, nearest first */
+	public List<VoxelLevel> visibleChunks (Camera camera, List<VoxelLevel> chunks) {
+		return OctreeTraversal.getVisibleChunks(this, camera.frustum, camera.position, chunks);
+	}
+
+	public OctreeParallelTraversal<VoxelLevel> parallelTraversal () {
+		return parallelTraversal;
+	}
+
+	/* number of voxels, read from the summary of the root */
+	public long count () {
+		VoxelLevel root = rootNode;
+		return root != null ? root.leafCount() : 0;
+	}
+
+	/* number of voxels of the look type inside the bounding box, counted in parallel on a snapshot */
+	public long count (BoundingBox boundingBox, VoxelLookType lookType) {
+		OctreeSnapshot<VoxelLevel> snapshot = acquireSnapshot();
+		try {
+			return count(snapshot, boundingBox, lookType);
+		} finally {
+			releaseSnapshot(snapshot);
+		}
 	}
 
+	private long count (OctreeSnapshot<VoxelLevel> snapshot, BoundingBox boundingBox, VoxelLookType lookType) {
+		if (snapshot.rootNode == null || !snapshot.rootNode.contains(lookType)) return 0;
+		if (boundingBox == null && snapshot.rootNode.lookMask() == 1 << lookType.ordinal()) {
+			return snapshot.rootNode.leafCount();
+		}
+		long[] count = parallelTraversal.reduce(snapshot, boundingBox, new IOctreeReducer<VoxelLevel, long[]>() {
+			@Override
+			public long[] create () {
+				return new long[1];
+			}
+
+			@Override
+			public void accumulate (long[] accumulator, VoxelLevel node, long key, int level) {
+				VoxelLevel entity = node.uniform() != null ? node.uniform() : node;
+				if (!(entity instanceof VoxelLevelEntity)) return;
+				short type = ((VoxelLevelEntity) entity).type();
+				if ((VoxelTypeRegistry.lookMask(type) & (1 << lookType.ordinal())) == 0) return;
+				if (level == 0) {
+					++accumulator[0];
+					return;
+				}
+				if (boundingBox == null) {
+					accumulator[0] += 1L << (3 * level);
+					return;
+				}
+				// only the part of a uniform node inside the bounding box
+				if (key == OctreeKey.NONE) {
+					Vector3 min = node.boundingBox().min;
+					key = OctreeKey.encode(level, (int) min.x, (int) min.y, (int) min.z);
+				}
+				int size = OctreeKey.size(key);
+				accumulator[0] += cells(OctreeKey.x(key), size, boundingBox.min.x, boundingBox.max.x)
+						* cells(OctreeKey.y(key), size, boundingBox.min.y, boundingBox.max.y)
+						* cells(OctreeKey.z(key), size, boundingBox.min.z, boundingBox.max.z);
+			}
+
+			@Override
+			public long[] merge (long[] accumulator, long[] other) {
+				accumulator[0] += other[0];
+				return accumulator;
+			}
+		});
+		return count[0];
+	}
+
+	/* number of the cells v ... v + size - 1 touching min ... max */
+	private static long cells (int v, int size, float min, float max) {
+		int from = Math.max(v, MathUtils.ceil(min) - 1);
+		int to = Math.min(v + size - 1, MathUtils.floor(max));
+		return Math.max(0, to - from + 1);
+	}
 }
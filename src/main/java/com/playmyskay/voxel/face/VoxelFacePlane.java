@@ -5,6 +5,8 @@ import com.playmyskay.voxel.type.VoxelTypeDescriptor;
 
 public class VoxelFacePlane implements Disposable {
 	public VoxelTypeDescriptor descriptor;
+	// id of the type of the descriptor, compared when planes are merged
+	public short type;
 
 	private boolean disposed = false;
 	public byte faceBits = 0x00;
@@ -45,6 +47,8 @@ public class VoxelFacePlane implements Disposable {
 		z1 = -1f;
 		z2 = -1f;
 		faceBits = 0;
+		descriptor = null;
+		type = 0;
 		disposed = false;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,7 @@
+package com.playmyskay.voxel.level;
+
+/* the voxels of a chunk by their coordinates relative to its minimum corner, as read by the mesher */
+public interface IVoxelVolume {
+	/* id of the type of the voxel or VoxelTypeRegistry.EMPTY for an empty cell */
+	short type (int x, int y, int z);
+}
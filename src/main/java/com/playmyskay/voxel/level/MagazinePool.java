@@ -0,0 +1,191 @@
+package com.playmyskay.voxel.level;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Pool of free objects kept in magazines of MAGAZINE_SIZE objects. Every thread obtains from and frees to two
+ * magazines of its own and only exchanges whole magazines with the shared depot, so the depot is touched once per
+ * MAGAZINE_SIZE objects instead of once per object. The objects in the magazines of a thread are only handed out
+ * to that thread, flush() returns them to the depot.
+ *
+ * The depot keeps at most capacity objects, the magazines beyond it are left to the GC. trim() releases the
+ * magazines which stayed in the depot since the previous trim, so an idle pool shrinks step by step.
+ */
+public class MagazinePool<T> {
+	public static final int MAGAZINE_SIZE = 64;
+
+	private static class Magazine {
+		final Object[] objects = new Object[MAGAZINE_SIZE];
+		int size;
+	}
+
+	private static class Cache {
+		Magazine loaded = new Magazine();
+		Magazine previous = new Magazine();
+	}
+
+	// magazines holding objects, magazines without objects
+	private ConcurrentLinkedQueue<Magazine> full = new ConcurrentLinkedQueue<>();
+	private ConcurrentLinkedQueue<Magazine> empty = new ConcurrentLinkedQueue<>();
+	private ThreadLocal<Cache> caches = ThreadLocal.withInitial(Cache::new);
+	private LongAdder size = new LongAdder();
+	private LongAdder hits = new LongAdder();
+	private LongAdder misses = new LongAdder();
+	private volatile int capacity = Integer.MAX_VALUE;
+	// magazines in the depot and the fewest of them since the last trim, the ones nobody needed
+	private AtomicInteger depot = new AtomicInteger();
+	private AtomicInteger lowWater = new AtomicInteger();
+
+	/* a free object or null if the pool is empty */
+	@SuppressWarnings("unchecked")
+	public T obtain () {
+		Cache cache = caches.get();
+		if (cache.loaded.size == 0) {
+			if (cache.previous.size > 0) {
+				swap(cache);
+			} else {
+				Magazine magazine = poll();
+				if (magazine == null) {
+					misses.increment();
+					return null;
+				}
+				empty.offer(cache.previous);
+				cache.previous = cache.loaded;
+				cache.loaded = magazine;
+			}
+		}
+		Magazine magazine = cache.loaded;
+		T object = (T) magazine.objects[--magazine.size];
+		magazine.objects[magazine.size] = null;
+		size.decrement();
+		hits.increment();
+		return object;
+	}
+
+	public void free (T object) {
+		Cache cache = caches.get();
+		if (cache.loaded.size == MAGAZINE_SIZE) {
+			if (cache.previous.size == 0) {
+				swap(cache);
+			} else {
+				offer(cache.previous);
+				cache.previous = cache.loaded;
+				cache.loaded = emptyMagazine();
+			}
+		}
+		Magazine magazine = cache.loaded;
+		magazine.objects[magazine.size++] = object;
+		size.increment();
+	}
+
+	/* returns the objects to the depot in whole magazines, bypassing the magazines of the calling thread */
+	public void freeAll (List<? extends T> objects) {
+		Magazine magazine = null;
+		for (int i = 0; i < objects.size(); ++i) {
+			if (magazine == null) magazine = emptyMagazine();
+			magazine.objects[magazine.size++] = objects.get(i);
+			if (magazine.size == MAGAZINE_SIZE) {
+				size.add(magazine.size);
+				offer(magazine);
+				magazine = null;
+			}
+		}
+		if (magazine != null) {
+			size.add(magazine.size);
+			offer(magazine);
+		}
+	}
+
+	/* hands the objects cached by the calling thread over to the depot, e.g. before the thread ends */
+	public void flush () {
+		Cache cache = caches.get();
+		if (cache.loaded.size > 0) {
+			offer(cache.loaded);
+			cache.loaded = emptyMagazine();
+		}
+		if (cache.previous.size > 0) {
+			offer(cache.previous);
+			cache.previous = emptyMagazine();
+		}
+	}
+
+	/* releases the magazines nobody has taken from the depot since the last trim, returns the released objects */
+	public int trim () {
+		int idle = lowWater.get();
+		int released = 0;
+		for (int i = 0; i < idle; ++i) {
+			Magazine magazine = poll();
+			if (magazine == null) break;
+			released += release(magazine);
+		}
+		lowWater.set(depot.get());
+		return released;
+	}
+
+	/* the depot keeps at most capacity objects, the ones above it are released */
+	public void capacity (int capacity) {
+		this.capacity = capacity;
+		while (size.sum() > capacity) {
+			Magazine magazine = poll();
+			if (magazine == null) break;
+			release(magazine);
+		}
+	}
+
+	public int capacity () {
+		return capacity;
+	}
+
+	/* number of free objects in the depot and in the magazines of all threads */
+	public int size () {
+		return size.intValue();
+	}
+
+	/* number of obtain() calls which were served from the pool */
+	public long hits () {
+		return hits.sum();
+	}
+
+	/* number of obtain() calls which found the pool empty */
+	public long misses () {
+		return misses.sum();
+	}
+
+	private void offer (Magazine magazine) {
+		if (size.sum() > capacity) {
+			release(magazine);
+			return;
+		}
+		full.offer(magazine);
+		depot.incrementAndGet();
+	}
+
+	private Magazine poll () {
+		Magazine magazine = full.poll();
+		if (magazine == null) return null;
+		int magazines = depot.decrementAndGet();
+		if (magazines < lowWater.get()) lowWater.set(magazines);
+		return magazine;
+	}
+
+	/* the objects of the magazine are left to the GC */
+	private int release (Magazine magazine) {
+		int released = magazine.size;
+		size.add(-released);
+		return released;
+	}
+
+	private Magazine emptyMagazine () {
+		Magazine magazine = empty.poll();
+		return magazine != null ? magazine : new Magazine();
+	}
+
+	private static void swap (Cache cache) {
+		Magazine magazine = cache.loaded;
+		cache.loaded = cache.previous;
+		cache.previous = magazine;
+	}
+}
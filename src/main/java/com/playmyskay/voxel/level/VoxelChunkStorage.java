@@ -0,0 +1,172 @@
+package com.playmyskay.voxel.level;
+
+import java.util.Arrays;
+
+import com.playmyskay.voxel.type.VoxelTypeDescriptor;
+import com.playmyskay.voxel.type.VoxelTypeRegistry;
+
+/*
+ * The voxels of a chunk without a node per voxel: a palette of the type ids used in the chunk and a packed array with
+ * the palette index of every cell. An index takes 1, 2, 4, 8 or 16 bits, the array is repacked with twice the bits
+ * when the palette outgrows them. Index 0 is the empty cell. The cells are ordered x, then z, then y like
+ * VoxelPlaneTools.toIndex().
+ *
+ * A storage is filled by one thread before its chunk is attached to the octree and only read afterwards, see
+ * VoxelLevelChunk.
+ */
+public class VoxelChunkStorage implements IVoxelVolume {
+	private final int shift;
+	private final int size;
+	private int bits = 1;
+	private long[] data;
+	// type ids by palette index with the number of their voxels and a shared leaf handed out to octree readers
+	private short[] palette = new short[2];
+	private int[] counts = new int[2];
+	private VoxelLevelEntity[] leaves = new VoxelLevelEntity[2];
+	private int paletteSize = 1;
+	// number of voxels per layer y
+	private int[] layers;
+	private int count;
+
+	public VoxelChunkStorage(int size) {
+		this.size = size;
+		this.shift = Integer.numberOfTrailingZeros(size);
+		this.data = new long[words(size * size * size, bits)];
+		this.layers = new int[size];
+	}
+
+	public int size () {
+		return size;
+	}
+
+	/* palette index of the cell */
+	public int get (int x, int y, int z) {
+		int index = index(x, y, z);
+		int perWord = 64 / bits;
+		long word = data[index / perWord];
+		return (int) ((word >>> ((index % perWord) * bits)) & ((1L << bits) - 1));
+	}
+
+	@Override
+	public short type (int x, int y, int z) {
+		return palette[get(x, y, z)];
+	}
+
+	public VoxelTypeDescriptor descriptor (int x, int y, int z) {
+		return VoxelTypeRegistry.descriptor(type(x, y, z));
+	}
+
+	/* the shared leaf of the type of the cell or null for an empty cell */
+	public VoxelLevelEntity leaf (int x, int y, int z) {
+		return leaves[get(x, y, z)];
+	}
+
+	/* sets the type of the cell, null empties it */
+	public void set (int x, int y, int z, VoxelTypeDescriptor descriptor) {
+		set(x, y, z, VoxelTypeRegistry.id(descriptor));
+	}
+
+	/* sets the type id of the cell, VoxelTypeRegistry.EMPTY empties it */
+	public void set (int x, int y, int z, short type) {
+		int value = type != VoxelTypeRegistry.EMPTY ? paletteIndex(type) : 0;
+		int old = get(x, y, z);
+		if (old == value) return;
+
+		if (old != 0) {
+			--counts[old];
+			--layers[y];
+			--count;
+		}
+		if (value != 0) {
+			++counts[value];
+			++layers[y];
+			++count;
+		}
+		write(index(x, y, z), value);
+	}
+
+	/* number of voxels */
+	public int count () {
+		return count;
+	}
+
+	/* number of voxels in layer y */
+	public int count (int y) {
+		return layers[y];
+	}
+
+	public int bits () {
+		return bits;
+	}
+
+	/* number of palette entries including the empty cell */
+	public int paletteSize () {
+		return paletteSize;
+	}
+
+	/* type id of the palette index, EMPTY for the empty cell and for an entry without voxels */
+	public short palette (int index) {
+		return counts[index] > 0 ? palette[index] : VoxelTypeRegistry.EMPTY;
+	}
+
+	/* approximate heap bytes of the storage without the shared leaves */
+	public long bytes () {
+		return 16 + data.length * 8L + palette.length * 2L + counts.length * 4L + leaves.length * 4L
+				+ layers.length * 4L;
+	}
+
+	private int index (int x, int y, int z) {
+		return (((y << shift) | z) << shift) | x;
+	}
+
+	/* index of the type in the palette, an entry without voxels is reused before the palette grows */
+	private int paletteIndex (short type) {
+		int free = -1;
+		for (int i = 1; i < paletteSize; ++i) {
+			if (palette[i] == type) return i;
+			if (free < 0 && counts[i] == 0) free = i;
+		}
+		if (free < 0) {
+			free = paletteSize++;
+			if (paletteSize > palette.length) {
+				palette = Arrays.copyOf(palette, palette.length * 2);
+				counts = Arrays.copyOf(counts, counts.length * 2);
+				leaves = Arrays.copyOf(leaves, leaves.length * 2);
+			}
+			if (paletteSize > 1 << bits) repack(bits * 2);
+		}
+		palette[free] = type;
+		VoxelLevelEntity leaf = new VoxelLevelEntity();
+		leaf.descriptor = VoxelTypeRegistry.descriptor(type);
+		leaf.shared(true);
+		leaves[free] = leaf;
+		return free;
+	}
+
+	private void write (int index, int value) {
+		int perWord = 64 / bits;
+		int offset = (index % perWord) * bits;
+		long mask = ((1L << bits) - 1) << offset;
+		int word = index / perWord;
+		data[word] = (data[word] & ~mask) | ((long) value << offset);
+	}
+
+	private void repack (int newBits) {
+		int cells = size * size * size;
+		int oldBits = bits;
+		long[] oldData = data;
+		int oldPerWord = 64 / oldBits;
+		long oldMask = (1L << oldBits) - 1;
+
+		bits = newBits;
+		data = new long[words(cells, bits)];
+		for (int index = 0; index < cells; ++index) {
+			int value = (int) ((oldData[index / oldPerWord] >>> ((index % oldPerWord) * oldBits)) & oldMask);
+			if (value != 0) write(index, value);
+		}
+	}
+
+	private static int words (int cells, int bits) {
+		return (cells * bits + 63) / 64;
+	}
+}
@@ -0,0 +1,18 @@
+package com.playmyskay.voxel.level;
+
+import com.playmyskay.voxel.type.VoxelTypeRegistry;
+
+/* a volume of the leaves of a chunk built of nodes, indexed [x][y][z] */
+public class VoxelEntityVolume implements IVoxelVolume {
+	public VoxelLevelEntity[][][] entities;
+
+	public VoxelEntityVolume(VoxelLevelEntity[][][] entities) {
+		this.entities = entities;
+	}
+
+	@Override
+	public short type (int x, int y, int z) {
+		VoxelLevelEntity entity = entities[x][y][z];
+		return entity != null ? VoxelTypeRegistry.id(entity.descriptor) : VoxelTypeRegistry.EMPTY;
+	}
+}
@@ -1,15 +1,129 @@
 package com.playmyskay.voxel.level;
 
 import com.badlogic.gdx.utils.Disposable;
+import com.playmyskay.octree.common.OctreeKey;
 import com.playmyskay.octree.common.OctreeNode;
+import com.playmyskay.octree.common.OctreeNodeDescriptor;
+import com.playmyskay.voxel.look.VoxelLookType;
+import com.playmyskay.voxel.type.VoxelUsageType;
 
 public abstract class VoxelLevel extends OctreeNode<VoxelLevel> implements IVoxelLevel, Disposable {
+	/*
+	 * Summary of the leaves below the node: their number, the bits of their look and usage types and the range of
+	 * their y coordinates. It is recomputed from the children whenever the node is updated on the way from an edited
+	 * leaf to the root. The y range is relative to the minimum corner of the node, so the summary of a subtree
+	 * shared by several parents is valid at every position. An empty node has maxY < minY.
+	 */
+	private long leafCount;
+	private int lookMask;
+	private int usageMask;
+	private int minY;
+	private int maxY = -1;
 
 	@Override
 	public boolean leaf () {
 		return false;
 	}
 
+	@Override
+	public void update (VoxelLevel node, OctreeNodeDescriptor descriptor) {
+		summarize();
+	}
+
+	@Override
+	public void copy (VoxelLevel node) {
+		super.copy(node);
+		leafCount = node.leafCount;
+		lookMask = node.lookMask;
+		usageMask = node.usageMask;
+		minY = node.minY;
+		maxY = node.maxY;
+	}
+
+	@Override
+	public void reset () {
+		super.reset();
+		summary(0, 0, 0, 0, -1);
+	}
+
+	public long leafCount () {
+		return leafCount;
+	}
+
+	/* bit lookType.ordinal() is set if a leaf of the look type is below the node */
+	public int lookMask () {
+		return lookMask;
+	}
+
+	/* bit voxelType.ordinal() is set if a leaf of the usage type is below the node */
+	public int usageMask () {
+		return usageMask;
+	}
+
+	public boolean contains (VoxelLookType lookType) {
+		return (lookMask() & (1 << lookType.ordinal())) != 0;
+	}
+
+	public boolean contains (VoxelUsageType voxelType) {
+		return (usageMask() & (1 << voxelType.ordinal())) != 0;
+	}
+
+	public int minY () {
+		return minY;
+	}
+
+	public int maxY () {
+		return maxY;
+	}
+
+	/* level of the node, derived from its bounding box or its key */
+	public int level () {
+		if (hasBoundingBox()) return Integer.numberOfTrailingZeros((int) boundingBox().getWidth());
+		return OctreeKey.level(key());
+	}
+
+	/* recomputes the summary from the children, concurrent edits of different chunks meet above the key level */
+	protected synchronized void summarize () {
+		VoxelLevel content = uniform();
+		int level = level();
+		if (content != null) {
+			leafCount = 1L << (3 * level);
+			lookMask = content.lookMask();
+			usageMask = content.usageMask();
+			minY = 0;
+			maxY = (1 << level) - 1;
+			return;
+		}
+
+		long count = 0;
+		int looks = 0;
+		int usages = 0;
+		int low = Integer.MAX_VALUE;
+		int high = -1;
+		int half = 1 << (level - 1);
+		for (int mask = childMask(); mask != 0; mask &= mask - 1) {
+			int i = Integer.numberOfTrailingZeros(mask);
+			VoxelLevel child = child(i);
+			if (child.leafCount() == 0) continue;
+			int offset = (i >> 2) * half;
+			count += child.leafCount();
+			looks |= child.lookMask();
+			usages |= child.usageMask();
+			low = Math.min(low, offset + child.minY());
+			high = Math.max(high, offset + child.maxY());
+		}
+		summary(count, looks, usages, count != 0 ? low : 0, high);
+	}
+
+	/* sets the summary of a node which summarizes its leaves in its own way */
+	protected void summary (long leafCount, int lookMask, int usageMask, int minY, int maxY) {
+		this.leafCount = leafCount;
+		this.lookMask = lookMask;
+		this.usageMask = usageMask;
+		this.minY = minY;
+		this.maxY = maxY;
+	}
+
 	@Override
 	public void dispose () {
 
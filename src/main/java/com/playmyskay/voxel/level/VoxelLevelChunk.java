@@ -1,6 +1,7 @@
 package com.playmyskay.voxel.level;
 
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.badlogic.gdx.math.collision.BoundingBox;
 import com.playmyskay.octree.common.OctreeNodeDescriptor;
@@ -11,13 +12,18 @@ import com.playmyskay.voxel.face.VoxelFace;
 import com.playmyskay.voxel.face.VoxelFace.Direction;
 import com.playmyskay.voxel.face.VoxelFacePlane;
 import com.playmyskay.voxel.plane.VoxelPlaneTools;
+import com.playmyskay.voxel.type.VoxelTypeRegistry;
 import com.playmyskay.voxel.world.VoxelWorld;
 
 public class VoxelLevelChunk extends VoxelLevel {
 	public ArrayList<ArrayList<VoxelFacePlane>> planeListList = new ArrayList<>();
 	private VoxelLevel[] childs;
+	// the voxels of a stored chunk, which has no nodes below it
+	private VoxelChunkStorage storage;
 	private BoundingBox boundingBox = new BoundingBox();
 	private boolean valid = false;
+	// references of the render pipeline, an evicted chunk is recycled when all of them are gone
+	private AtomicInteger pins = new AtomicInteger();
 
 	public boolean valid () {
 		return valid;
@@ -27,11 +33,89 @@ public class VoxelLevelChunk extends VoxelLevel {
 		this.valid = flag;
 	}
 
+	public void pin () {
+		pins.incrementAndGet();
+	}
+
+	public void unpin () {
+		pins.decrementAndGet();
+	}
+
+	@Override
+	public boolean inUse () {
+		return pins.get() > 0;
+	}
+
+	public VoxelChunkStorage storage () {
+		return storage;
+	}
+
+	/* keeps the voxels of the chunk in the storage, it must not have children and is attached afterwards */
+	public void storage (VoxelChunkStorage storage) {
+		this.storage = storage;
+	}
+
+	@Override
+	public boolean stored () {
+		return storage != null;
+	}
+
+	@Override
+	public VoxelLevel storedLeaf (int x, int y, int z) {
+		return storage.leaf(x, y, z);
+	}
+
+	@Override
+	public void dropStore () {
+		storage = null;
+	}
+
+	@Override
+	protected synchronized void summarize () {
+		if (storage == null) {
+			super.summarize();
+			return;
+		}
+
+		int looks = 0;
+		int usages = 0;
+		for (int i = 1; i < storage.paletteSize(); ++i) {
+			short type = storage.palette(i);
+			looks |= VoxelTypeRegistry.lookMask(type);
+			usages |= VoxelTypeRegistry.usageMask(type);
+		}
+		int low = 0;
+		int high = storage.size() - 1;
+		while (low <= high && storage.count(low) == 0) {
+			++low;
+		}
+		while (high >= low && storage.count(high) == 0) {
+			--high;
+		}
+		summary(storage.count(), looks, usages, storage.count() != 0 ? low : 0, high);
+	}
+
+	@Override
+	public void reset () {
+		super.reset();
+		planeListList.clear();
+		valid = false;
+		pins.set(0);
+	}
+
 	@Override
 	public boolean hasBoundingBox () {
 		return true;
 	}
 
+	@Override
+	public void copy (VoxelLevel node) {
+		super.copy(node);
+		boundingBox.set(node.boundingBox());
+		valid = ((VoxelLevelChunk) node).valid;
+		storage = ((VoxelLevelChunk) node).storage;
+	}
+
 	@Override
 	public BoundingBox boundingBox () {
 		return boundingBox;
@@ -70,24 +154,23 @@ public class VoxelLevelChunk extends VoxelLevel {
 
 	@Override
 	public void update (VoxelLevel node, OctreeNodeDescriptor descriptor) {
+		// the descriptor of an added leaf is set by the leaf itself
+		super.update(node, descriptor);
 		if (node instanceof VoxelLevelEntity && descriptor instanceof VoxelDescriptor) {
 			VoxelDescriptor voxelDescriptor = (VoxelDescriptor) descriptor;
-			VoxelLevelEntity voxelLevelEntity = (VoxelLevelEntity) node;
-			if (voxelDescriptor.getBaseActionType() == BaseActionType.add) {
-				voxelLevelEntity.descriptor = voxelDescriptor.voxelTypeDescriptor;
-			} else if (voxelDescriptor.getBaseActionType() == BaseActionType.remove) {
+			if (voxelDescriptor.getBaseActionType() == BaseActionType.remove) {
 //				VoxelLevelEntity[][] heightMap = createHeightMap(this);
 //				VoxelPlaneTools.determineVoxelPlaneFaces(VoxelOctreeProvider.get(), this, heightMap);
 			}
 		}
 	}
 
-	private static void rebuildFaces (VoxelLevelChunk chunk, VoxelLevelEntity[][][] volume, byte[][][] faces) {
+	private static void rebuildFaces (VoxelLevelChunk chunk, IVoxelVolume volume, byte[][][] faces) {
 		VoxelLevelEntity offsetEntity = null;
 		for (int x = 0; x < VoxelWorld.CHUNK_SIZE; ++x) {
 			for (int y = 0; y < VoxelWorld.CHUNK_SIZE; ++y) {
 				for (int z = 0; z < VoxelWorld.CHUNK_SIZE; ++z) {
-					if (volume[x][y][z] == null) continue;
+					if (volume.type(x, y, z) == VoxelTypeRegistry.EMPTY) continue;
 					determineFaces(offsetEntity, chunk, x, y, z, volume, faces);
 
 //				EnumSet.range(Direction.top, Direction.right).forEach(direction -> {
@@ -102,7 +185,7 @@ public class VoxelLevelChunk extends VoxelLevel {
 		}
 	}
 
-	public void rebuild (VoxelLevelEntity[][][] volume, byte[][][] faces) {
+	public void rebuild (IVoxelVolume volume, byte[][][] faces) {
 //		VoxelLevelEntity[][] heightMap = createHeightMap(this);
 		rebuildFaces(this, volume, faces);
 		VoxelPlaneTools.determineVoxelPlaneFaces(VoxelOctreeProvider.get(), this, volume, faces);
@@ -115,21 +198,20 @@ public class VoxelLevelChunk extends VoxelLevel {
 //		return offsetEntity;
 //	}
 
-	private static boolean hasOffsetEntity (VoxelLevelChunk chunk, VoxelLevelEntity[][][] volume, int x, int y, int z,
+	private static boolean hasOffsetEntity (VoxelLevelChunk chunk, IVoxelVolume volume, int x, int y, int z,
 			int offsetX, int offsetY, int offsetZ) {
 		x += offsetX;
 		y += offsetY;
 		z += offsetZ;
 		if (x >= 0 && x < VoxelWorld.CHUNK_SIZE && y >= 0 && y < VoxelWorld.CHUNK_SIZE && z >= 0
 				&& z < VoxelWorld.CHUNK_SIZE) {
-			return volume[x][y][z] != null;
+			return volume.type(x, y, z) != VoxelTypeRegistry.EMPTY;
 		}
 		return false;
 	}
 
 	private static void determineFace (VoxelLevelEntity offsetEntity, Direction direction, VoxelLevelChunk chunk,
-			VoxelLevelEntity entity, int x, int y, int z, VoxelLevelEntity[][][] volume, byte[][][] faces, int offsetX,
-			int offsetY, int offsetZ) {
+			int x, int y, int z, IVoxelVolume volume, byte[][][] faces, int offsetX, int offsetY, int offsetZ) {
 		if (!hasOffsetEntity(chunk, volume, x, y, z, offsetX, offsetY, offsetZ)) {
 			faces[x][y][z] = VoxelFace.addFace(faces[x][y][z], direction);
 		} else {
@@ -140,15 +222,14 @@ public class VoxelLevelChunk extends VoxelLevel {
 	}
 
 	private static void determineFaces (VoxelLevelEntity offsetEntity, VoxelLevelChunk chunk, int x, int y, int z,
-			VoxelLevelEntity[][][] volume, byte[][][] faces) {
-		VoxelLevelEntity entity = volume[x][y][z];
+			IVoxelVolume volume, byte[][][] faces) {
 		faces[x][y][z] = VoxelFace.getDirectionBit(Direction.none);
-		determineFace(offsetEntity, Direction.left, chunk, entity, x, y, z, volume, faces, -1, 0, 0);
-		determineFace(offsetEntity, Direction.right, chunk, entity, x, y, z, volume, faces, 1, 0, 0);
-		determineFace(offsetEntity, Direction.top, chunk, entity, x, y, z, volume, faces, 0, 1, 0);
-		determineFace(offsetEntity, Direction.bottom, chunk, entity, x, y, z, volume, faces, 0, -1, 0);
-		determineFace(offsetEntity, Direction.front, chunk, entity, x, y, z, volume, faces, 0, 0, 1);
-		determineFace(offsetEntity, Direction.back, chunk, entity, x, y, z, volume, faces, 0, 0, -1);
+		determineFace(offsetEntity, Direction.left, chunk, x, y, z, volume, faces, -1, 0, 0);
+		determineFace(offsetEntity, Direction.right, chunk, x, y, z, volume, faces, 1, 0, 0);
+		determineFace(offsetEntity, Direction.top, chunk, x, y, z, volume, faces, 0, 1, 0);
+		determineFace(offsetEntity, Direction.bottom, chunk, x, y, z, volume, faces, 0, -1, 0);
+		determineFace(offsetEntity, Direction.front, chunk, x, y, z, volume, faces, 0, 0, 1);
+		determineFace(offsetEntity, Direction.back, chunk, x, y, z, volume, faces, 0, 0, -1);
 	}
 
 	@Override
@@ -2,7 +2,6 @@ package com.playmyskay.voxel.level;
 
 import com.badlogic.gdx.math.collision.BoundingBox;
 import com.badlogic.gdx.utils.GdxRuntimeException;
-import com.playmyskay.octree.common.OctreeNodeDescriptor;
 
 public class VoxelLevelChunkSpace extends VoxelLevel {
 	private VoxelLevel[] childs;
@@ -23,11 +22,6 @@ public class VoxelLevelChunkSpace extends VoxelLevel {
 		throw new GdxRuntimeException("never call this method");
 	}
 
-	@Override
-	public void update (VoxelLevel node, OctreeNodeDescriptor descriptor) {
-
-	}
-
 	@Override
 	public VoxelLevel[] childs () {
 		return childs;
@@ -2,7 +2,6 @@ package com.playmyskay.voxel.level;
 
 import com.badlogic.gdx.math.collision.BoundingBox;
 import com.badlogic.gdx.utils.GdxRuntimeException;
-import com.playmyskay.octree.common.OctreeNodeDescriptor;
 
 public class VoxelLevelChunkSpace1 extends VoxelLevel {
 	private VoxelLevel[] childs;
@@ -18,11 +17,6 @@ public class VoxelLevelChunkSpace1 extends VoxelLevel {
 //		return boundingBox;
 //	}
 
-	@Override
-	public void update (VoxelLevel node, OctreeNodeDescriptor descriptor) {
-
-	}
-
 	@Override
 	public VoxelLevel[] childs () {
 		return childs;
@@ -3,10 +3,14 @@ package com.playmyskay.voxel.level;
 import com.badlogic.gdx.math.collision.BoundingBox;
 import com.badlogic.gdx.utils.GdxRuntimeException;
 import com.playmyskay.octree.common.OctreeNodeDescriptor;
+import com.playmyskay.octree.common.OctreeNodeDescriptor.BaseActionType;
 import com.playmyskay.voxel.common.descriptors.VoxelDescriptor;
 import com.playmyskay.voxel.type.VoxelTypeDescriptor;
+import com.playmyskay.voxel.type.VoxelTypeRegistry;
+import com.playmyskay.voxel.type.VoxelUsageType;
 
 public class VoxelLevelEntity extends VoxelLevel {
+	// the shared descriptor of the type, see VoxelTypeRegistry
 	public VoxelTypeDescriptor descriptor;
 
 	@Override
@@ -19,19 +23,83 @@ public class VoxelLevelEntity extends VoxelLevel {
 		return true;
 	}
 
+	/* the leaf is the first node updated by an add, before its ancestors summarize it */
 	@Override
 	public void update (VoxelLevel node, OctreeNodeDescriptor descriptor) {
+		if (node == this && descriptor instanceof VoxelDescriptor
+				&& descriptor.getBaseActionType() == BaseActionType.add) {
+			this.descriptor = VoxelTypeRegistry.intern(((VoxelDescriptor) descriptor).voxelTypeDescriptor);
+		}
+	}
+
+	@Override
+	public int level () {
+		return 0;
+	}
+
+	@Override
+	public long leafCount () {
+		return 1;
+	}
+
+	@Override
+	public int lookMask () {
+		return VoxelTypeRegistry.lookMask(type());
+	}
+
+	@Override
+	public int usageMask () {
+		// a leaf without descriptor is undefined
+		if (descriptor == null) return 1 << VoxelUsageType.undef.ordinal();
+		return VoxelTypeRegistry.usageMask(type());
+	}
+
+	@Override
+	public int minY () {
+		return 0;
+	}
 
+	@Override
+	public int maxY () {
+		return 0;
 	}
 
 	@Override
 	public void descriptor (OctreeNodeDescriptor descriptor) {
 		if (descriptor instanceof VoxelDescriptor) {
-			this.descriptor = ((VoxelDescriptor) descriptor).voxelTypeDescriptor;
+			this.descriptor = VoxelTypeRegistry.intern(((VoxelDescriptor) descriptor).voxelTypeDescriptor);
 		}
 		super.descriptor(descriptor);
 	}
 
+	@Override
+	public void reset () {
+		super.reset();
+		descriptor = null;
+	}
+
+	@Override
+	public void copy (VoxelLevel node) {
+		super.copy(node);
+		descriptor = ((VoxelLevelEntity) node).descriptor;
+	}
+
+	@Override
+	public boolean sameContent (VoxelLevel node) {
+		return descriptor != null && node instanceof VoxelLevelEntity
+				&& type() == ((VoxelLevelEntity) node).type();
+	}
+
+	@Override
+	public int contentHash () {
+		return type();
+	}
+
+	/* id of the type of the leaf, VoxelTypeRegistry.EMPTY without descriptor */
+	public short type () {
+		return VoxelTypeRegistry.id(descriptor);
+	}
+
 	@Override
 	public VoxelLevel[] childs () {
 		throw new GdxRuntimeException("never call this method");
@@ -1,68 +1,133 @@
 package com.playmyskay.voxel.level;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+import com.playmyskay.octree.common.OctreeStats;
 import com.playmyskay.voxel.world.VoxelWorld;
 
+/*
+ * The pools are sized for the cached area of the world: the demand of each level type is estimated from the number
+ * of cached chunks and scaled down to fit VoxelWorld.NODE_POOL_BUDGET bytes. The capacities follow the cached area
+ * and the pools are trimmed every TRIM_INTERVAL milliseconds, so the heap shrinks again after the viewer has left a
+ * dense area.
+ */
 public class VoxelLevelPool {
+	public static final long TRIM_INTERVAL = 10000;
+
 //	private VoxelLevelEntityPool entityPool;
 //	private VoxelLevelChunkPool chunkPool;
 //	private VoxelLevelChunkSpacePool chunkSpacePool;
 //	private VoxelLevelChunkSpace1Pool chunkSpace1Pool;
 //	private VoxelLevelSpacePool spacePool;
 
-	private ConcurrentLinkedQueue<VoxelLevelEntity> entityPool = new ConcurrentLinkedQueue<>();
-	private ConcurrentLinkedQueue<VoxelLevelChunk> chunkPool = new ConcurrentLinkedQueue<>();
-	private ConcurrentLinkedQueue<VoxelLevelChunkSpace> chunkSpacePool = new ConcurrentLinkedQueue<>();
-	private ConcurrentLinkedQueue<VoxelLevelChunkSpace1> chunkSpace1Pool = new ConcurrentLinkedQueue<>();
-	private ConcurrentLinkedQueue<VoxelLevelSpace> spacePool = new ConcurrentLinkedQueue<>();
+	// the generator threads obtain and free through magazines of their own, see MagazinePool
+	private MagazinePool<VoxelLevelEntity> entityPool = new MagazinePool<>();
+	private MagazinePool<VoxelLevelChunk> chunkPool = new MagazinePool<>();
+	private MagazinePool<VoxelLevelChunkSpace> chunkSpacePool = new MagazinePool<>();
+	private MagazinePool<VoxelLevelChunkSpace1> chunkSpace1Pool = new MagazinePool<>();
+	private MagazinePool<VoxelLevelSpace> spacePool = new MagazinePool<>();
+	// child arrays of the sizes 1, 2, 4 and 8, indexed by the log2 of the size
+	private List<MagazinePool<VoxelLevel[]>> arrayPools = new ArrayList<>();
+	private VoxelWorld world;
+	private long lastTrim = System.currentTimeMillis();
 
 	public VoxelLevelPool(VoxelWorld world) {
-		int entityPoolSize = (world.cached_chunk_width * world.cached_chunk_depth * world.cached_chunk_height
-				* VoxelWorld.CHUNK_DIM) / 2;
-		int chunkPoolSize = world.cached_chunk_width * world.cached_chunk_depth * world.cached_chunk_height;
-		int chunkSpacePoolSize = (world.cached_chunk_width * world.cached_chunk_depth * world.cached_chunk_height
-				* VoxelWorld.CHUNK_DIM) / 3;
-		int chunkSpace1PoolSize = (world.cached_chunk_width * world.cached_chunk_depth * world.cached_chunk_height
-				* VoxelWorld.CHUNK_DIM) / 4;
-		int spacePoolSize = 4096;
-
-		try {
-//			initPool(entityPool, entityPoolSize, VoxelLevelEntity.class);
-//			initPool(chunkPool, chunkPoolSize, VoxelLevelChunk.class);
-//			initPool(chunkSpacePool, chunkSpacePoolSize, VoxelLevelChunkSpace.class);
-//			initPool(chunkSpace1Pool, chunkSpace1PoolSize, VoxelLevelChunkSpace1.class);
-//			initPool(spacePool, spacePoolSize, VoxelLevelSpace.class);
-		} catch (Exception e) {
-			e.printStackTrace();
+		this.world = world;
+		for (int i = 0; i < 4; i++) {
+			arrayPools.add(new MagazinePool<>());
 		}
+		resize();
 
-//		this.entityPool = new VoxelLevelEntityPool(entityPoolSize);
-//		this.chunkPool = new VoxelLevelChunkPool(chunkPoolSize);
-//		this.chunkSpacePool = new VoxelLevelChunkSpacePool(chunkSpacePoolSize);
-//		this.chunkSpace1Pool = new VoxelLevelChunkSpace1Pool();
-//		this.spacePool = new VoxelLevelSpacePool(spacePoolSize);
+		if (VoxelWorld.PREWARM_NODE_POOLS) {
+			try {
+				initPool(entityPool, VoxelLevelEntity.class);
+				initPool(chunkPool, VoxelLevelChunk.class);
+				initPool(chunkSpacePool, VoxelLevelChunkSpace.class);
+				initPool(chunkSpace1Pool, VoxelLevelChunkSpace1.class);
+				initPool(spacePool, VoxelLevelSpace.class);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			for (int i = 0; i < 4; i++) {
+				List<VoxelLevel[]> arrays = new ArrayList<>();
+				for (int j = 0; j < arrayPools.get(i).capacity(); ++j) {
+					arrays.add(new VoxelLevel[1 << i]);
+				}
+				arrayPools.get(i).freeAll(arrays);
+			}
+		}
 	}
 
-	private static <L extends VoxelLevel> void initPool (ConcurrentLinkedQueue<L> pool, int size, Class<L> clazz)
+	/* fills the pool up to its capacity */
+	private static <L extends VoxelLevel> void initPool (MagazinePool<L> pool, Class<L> clazz)
 			throws InstantiationException, IllegalAccessException {
+		int size = pool.capacity() - pool.size();
+		List<L> levels = new ArrayList<>(Math.max(0, size));
 		for (int i = 0; i < size; ++i) {
-			pool.add(clazz.newInstance());
+			levels.add(clazz.newInstance());
+		}
+		pool.freeAll(levels);
+	}
+
+	/* sets the capacities of the pools for the current cached area of the world */
+	public void resize () {
+		long chunks = (long) world.cached_chunk_width * world.cached_chunk_depth * world.cached_chunk_height;
+		long entityPoolSize = (chunks * VoxelWorld.CHUNK_DIM) / 2;
+		long chunkPoolSize = chunks;
+		long chunkSpacePoolSize = (chunks * VoxelWorld.CHUNK_DIM) / 3;
+		long chunkSpace1PoolSize = (chunks * VoxelWorld.CHUNK_DIM) / 4;
+		long spacePoolSize = 4096;
+
+		// an inner node comes with a child array of up to 8 slots
+		long innerBytes = OctreeStats.NODE_BYTES + OctreeStats.ARRAY_BYTES + 8 * OctreeStats.SLOT_BYTES;
+		long bytes = entityPoolSize * OctreeStats.NODE_BYTES
+				+ (chunkPoolSize + chunkSpacePoolSize + chunkSpace1PoolSize + spacePoolSize) * innerBytes;
+		double scale = Math.min(1, (double) VoxelWorld.NODE_POOL_BUDGET / bytes);
+
+		entityPool.capacity((int) (entityPoolSize * scale));
+		chunkPool.capacity((int) (chunkPoolSize * scale));
+		chunkSpacePool.capacity((int) (chunkSpacePoolSize * scale));
+		chunkSpace1Pool.capacity((int) (chunkSpace1PoolSize * scale));
+		spacePool.capacity((int) (spacePoolSize * scale));
+		// the arrays of the inner nodes are spread over the four sizes
+		int arrays = (int) ((chunkPoolSize + chunkSpacePoolSize + chunkSpace1PoolSize + spacePoolSize) * scale / 4);
+		for (MagazinePool<VoxelLevel[]> arrayPool : arrayPools) {
+			arrayPool.capacity(arrays);
+		}
+	}
+
+	/*
+	 * Follows the cached area and releases the free nodes and arrays which have not been needed since the last
+	 * trim. Does nothing within TRIM_INTERVAL of the last trim, returns the number of released objects.
+	 */
+	public int trim () {
+		long now = System.currentTimeMillis();
+		if (now - lastTrim < TRIM_INTERVAL) return 0;
+		lastTrim = now;
+
+		resize();
+		int released = entityPool.trim() + chunkPool.trim() + chunkSpacePool.trim() + chunkSpace1Pool.trim()
+				+ spacePool.trim();
+		for (MagazinePool<VoxelLevel[]> arrayPool : arrayPools) {
+			released += arrayPool.trim();
 		}
+		return released;
 	}
 
 	public VoxelLevel obtain (int level) {
 		VoxelLevel voxelLevel = null;
 		if (level == 0)
-			voxelLevel = entityPool.poll();
+			voxelLevel = entityPool.obtain();
 		else if (level == 1)
-			voxelLevel = chunkSpace1Pool.poll();
+			voxelLevel = chunkSpace1Pool.obtain();
 		else if (level == VoxelWorld.CHUNK_LEVEL)
-			voxelLevel = chunkPool.poll();
+			voxelLevel = chunkPool.obtain();
 		else if (level > 0 && level < VoxelWorld.CHUNK_LEVEL)
-			voxelLevel = chunkSpacePool.poll();
+			voxelLevel = chunkSpacePool.obtain();
 		else
-			voxelLevel = spacePool.poll();
+			voxelLevel = spacePool.obtain();
 
 		if (voxelLevel == null) {
 			if (level == 0)
@@ -82,14 +147,119 @@ public class VoxelLevelPool {
 
 	public void free (VoxelLevel level) {
 		if (level instanceof VoxelLevelEntity)
-			entityPool.offer((VoxelLevelEntity) level);
+			entityPool.free((VoxelLevelEntity) level);
 		else if (level instanceof VoxelLevelChunk)
-			chunkPool.offer((VoxelLevelChunk) level);
+			chunkPool.free((VoxelLevelChunk) level);
 		else if (level instanceof VoxelLevelChunkSpace1)
-			chunkSpace1Pool.offer((VoxelLevelChunkSpace1) level);
+			chunkSpace1Pool.free((VoxelLevelChunkSpace1) level);
 		else if (level instanceof VoxelLevelChunkSpace)
-			chunkSpacePool.offer((VoxelLevelChunkSpace) level);
+			chunkSpacePool.free((VoxelLevelChunkSpace) level);
 		else
-			spacePool.offer((VoxelLevelSpace) level);
+			spacePool.free((VoxelLevelSpace) level);
+	}
+
+	/*
+	 * Frees the nodes of an evicted subtree as one arena: they go to the depots in whole magazines, the magazines
+	 * of the calling thread stay as they are.
+	 */
+	public void freeAll (List<VoxelLevel> levels) {
+		List<VoxelLevelEntity> entities = new ArrayList<>();
+		List<VoxelLevelChunkSpace1> chunkSpaces1 = new ArrayList<>();
+		List<VoxelLevelChunkSpace> chunkSpaces = new ArrayList<>();
+		for (VoxelLevel level : levels) {
+			if (level instanceof VoxelLevelEntity)
+				entities.add((VoxelLevelEntity) level);
+			else if (level instanceof VoxelLevelChunkSpace1)
+				chunkSpaces1.add((VoxelLevelChunkSpace1) level);
+			else if (level instanceof VoxelLevelChunkSpace)
+				chunkSpaces.add((VoxelLevelChunkSpace) level);
+			else
+				free(level);
+		}
+		entityPool.freeAll(entities);
+		chunkSpace1Pool.freeAll(chunkSpaces1);
+		chunkSpacePool.freeAll(chunkSpaces);
+	}
+
+	/* returns the nodes and arrays cached by the calling thread to the depots */
+	public void flush () {
+		entityPool.flush();
+		chunkPool.flush();
+		chunkSpacePool.flush();
+		chunkSpace1Pool.flush();
+		spacePool.flush();
+		for (MagazinePool<VoxelLevel[]> arrayPool : arrayPools) {
+			arrayPool.flush();
+		}
+	}
+
+	public VoxelLevel[] obtainArray (int size) {
+		VoxelLevel[] array = pooledArray(size) ? arrayPools.get(Integer.numberOfTrailingZeros(size)).obtain() : null;
+		return array != null ? array : new VoxelLevel[size];
+	}
+
+	public void freeArray (VoxelLevel[] array) {
+		if (!pooledArray(array.length)) return;
+		Arrays.fill(array, null);
+		arrayPools.get(Integer.numberOfTrailingZeros(array.length)).free(array);
+	}
+
+	public void freeArrays (List<VoxelLevel[]> arrays) {
+		for (int i = 0; i < 4; i++) {
+			List<VoxelLevel[]> sized = new ArrayList<>();
+			for (VoxelLevel[] array : arrays) {
+				if (array.length != 1 << i) continue;
+				Arrays.fill(array, null);
+				sized.add(array);
+			}
+			arrayPools.get(i).freeAll(sized);
+		}
+	}
+
+	private static boolean pooledArray (int size) {
+		return size <= 8 && Integer.bitCount(size) == 1;
+	}
+
+	private MagazinePool<?> pool (Class<?> clazz) {
+		if (clazz.equals(VoxelLevelEntity.class)) return entityPool;
+		if (clazz.equals(VoxelLevelChunk.class)) return chunkPool;
+		if (clazz.equals(VoxelLevelChunkSpace1.class)) return chunkSpace1Pool;
+		if (clazz.equals(VoxelLevelChunkSpace.class)) return chunkSpacePool;
+		if (clazz.equals(VoxelLevelSpace.class)) return spacePool;
+		return null;
+	}
+
+	public int pooled (Class<?> clazz) {
+		MagazinePool<?> pool = pool(clazz);
+		return pool != null ? pool.size() : 0;
+	}
+
+	/* number of nodes of the class served from the pool */
+	public long hits (Class<?> clazz) {
+		MagazinePool<?> pool = pool(clazz);
+		return pool != null ? pool.hits() : 0;
+	}
+
+	/* number of nodes of the class which had to be allocated */
+	public long misses (Class<?> clazz) {
+		MagazinePool<?> pool = pool(clazz);
+		return pool != null ? pool.misses() : 0;
+	}
+
+	@Override
+	public String toString () {
+		StringBuilder sb = new StringBuilder();
+		for (Class<?> clazz : new Class<?>[] { VoxelLevelEntity.class, VoxelLevelChunkSpace1.class,
+				VoxelLevelChunkSpace.class, VoxelLevelChunk.class, VoxelLevelSpace.class }) {
+			MagazinePool<?> pool = pool(clazz);
+			sb.append(String.format("%s hits(%d) misses(%d) pooled(%d) capacity(%d)\n", clazz.getSimpleName(),
+					pool.hits(), pool.misses(), pool.size(), pool.capacity()));
+		}
+		for (int i = 0; i < 4; i++) {
+			MagazinePool<VoxelLevel[]> pool = arrayPools.get(i);
+			sb.append(String.format("VoxelLevel[%d] hits(%d) misses(%d) pooled(%d) capacity(%d)\n", 1 << i,
+					pool.hits(), pool.misses(), pool.size(), pool.capacity()));
+		}
+		return sb.toString();
 	}
 }
@@ -1,5 +1,7 @@
 package com.playmyskay.voxel.level;
 
+import java.util.List;
+
 import com.playmyskay.voxel.world.VoxelWorld;
 
 public class VoxelLevelPoolManager {
@@ -22,4 +24,37 @@ public class VoxelLevelPoolManager {
 	public void free (VoxelLevel level) {
 		pool.free(level);
 	}
+
+	public void freeAll (List<VoxelLevel> levels) {
+		pool.freeAll(levels);
+	}
+
+	public void flush () {
+		pool.flush();
+	}
+
+	public VoxelLevel[] obtainArray (int size) {
+		return pool.obtainArray(size);
+	}
+
+	public void freeArray (VoxelLevel[] array) {
+		pool.freeArray(array);
+	}
+
+	public void freeArrays (List<VoxelLevel[]> arrays) {
+		pool.freeArrays(arrays);
+	}
+
+	public int pooled (Class<?> clazz) {
+		return pool.pooled(clazz);
+	}
+
+	public int trim () {
+		return pool.trim();
+	}
+
+	/* the counters of the pool, see VoxelLevelPool.toString() */
+	public VoxelLevelPool pool () {
+		return pool;
+	}
 }
@@ -1,7 +1,6 @@
 package com.playmyskay.voxel.level;
 
 import com.badlogic.gdx.math.collision.BoundingBox;
-import com.playmyskay.octree.common.OctreeNodeDescriptor;
 
 public class VoxelLevelSpace extends VoxelLevel {
 	private VoxelLevel[] childs;
@@ -13,14 +12,15 @@ public class VoxelLevelSpace extends VoxelLevel {
 	}
 
 	@Override
-	public BoundingBox boundingBox () {
-		return boundingBox;
-//		return super.boundingBox();
+	public void copy (VoxelLevel node) {
+		super.copy(node);
+		boundingBox.set(node.boundingBox());
 	}
 
 	@Override
-	public void update (VoxelLevel node, OctreeNodeDescriptor descriptor) {
-
+	public BoundingBox boundingBox () {
+		return boundingBox;
+//		return super.boundingBox();
 	}
 
 	@Override
@@ -11,9 +11,11 @@ import com.playmyskay.voxel.common.VoxelOctree;
 import com.playmyskay.voxel.face.VoxelFace;
 import com.playmyskay.voxel.face.VoxelFace.Direction;
 import com.playmyskay.voxel.face.VoxelFacePlane;
+import com.playmyskay.voxel.level.IVoxelVolume;
 import com.playmyskay.voxel.level.VoxelLevel;
 import com.playmyskay.voxel.level.VoxelLevelChunk;
 import com.playmyskay.voxel.level.VoxelLevelEntity;
+import com.playmyskay.voxel.type.VoxelTypeRegistry;
 import com.playmyskay.voxel.world.VoxelWorld;
 
 public class VoxelPlaneTools {
@@ -40,7 +42,7 @@ public class VoxelPlaneTools {
 			if (plane1.isDisposed() || plane2.isDisposed()) continue;
 			if (plane1 == plane2) continue;
 			if (plane1.faceBits != plane2.faceBits) continue;
-			if (plane1.descriptor != plane2.descriptor) continue;
+			if (plane1.type != plane2.type) continue;
 //				if (plane1.y1 < plane2.y1 && plane1.y2 < plane2.y2) return ret;
 			if (plane1.y1 == plane2.y1 && plane1.y2 == plane2.y2) {
 				if (plane1.x1 == plane2.x1 && plane1.x2 == plane2.x2) {
@@ -82,7 +84,7 @@ public class VoxelPlaneTools {
 			if (plane1.isDisposed() || plane2.isDisposed()) continue;
 			if (plane1 == plane2) continue;
 			if (plane1.faceBits != plane2.faceBits) continue;
-			if (plane1.descriptor != plane2.descriptor) continue;
+			if (plane1.type != plane2.type) continue;
 			if (plane1.x1 == plane2.x1 && plane1.x2 == plane2.x2) {
 				if (plane1.z1 == plane2.z1 && plane1.z2 == plane2.z2) {
 					if (plane1.y2 == plane2.y1) {
@@ -237,17 +239,18 @@ public class VoxelPlaneTools {
 //		return entity.y;
 //	}
 
-	public static void handlePlane (PlaneHelper planeHelper, VoxelLevelEntity entity, byte face, Direction direction,
-			int x, int y, int z) {
-		if (entity == null || !VoxelFace.hasFace(face, direction)) {
+	public static void handlePlane (PlaneHelper planeHelper, short type, byte face, Direction direction, int x, int y,
+			int z) {
+		if (type == VoxelTypeRegistry.EMPTY || !VoxelFace.hasFace(face, direction)) {
 			planeHelper.resetPlane();
 			return;
 		}
 
 //		int y = getHeight(planeHelper.chunk, entity);
-		if (planeHelper.plane == null || planeHelper.plane.descriptor != entity.descriptor || planeHelper.y != y) {
+		if (planeHelper.plane == null || planeHelper.plane.type != type || planeHelper.y != y) {
 			planeHelper.plane = createPlane(planeHelper, direction);
-			planeHelper.plane.descriptor = entity.descriptor;
+			planeHelper.plane.type = type;
+			planeHelper.plane.descriptor = VoxelTypeRegistry.descriptor(type);
 
 			initPlane(planeHelper.plane, direction, x, y, z);
 			planeHelper.y = y;
@@ -256,12 +259,12 @@ public class VoxelPlaneTools {
 		}
 	}
 
-	private static void determineVoxelPlanes (PlaneHelper planeHelper, VoxelLevelEntity[][][] volume, byte[][][] faces,
+	private static void determineVoxelPlanes (PlaneHelper planeHelper, IVoxelVolume volume, byte[][][] faces,
 			Direction direction) {
 		for (int x = 0; x < VoxelWorld.CHUNK_SIZE; ++x) {
 			for (int y = 0; y < VoxelWorld.CHUNK_SIZE; ++y) {
 				for (int z = 0; z < VoxelWorld.CHUNK_SIZE; ++z) {
-					handlePlane(planeHelper, volume[x][y][z], faces[x][y][z], direction, x, y, z);
+					handlePlane(planeHelper, volume.type(x, y, z), faces[x][y][z], direction, x, y, z);
 				}
 				planeHelper.resetPlane();
 			}
@@ -326,6 +329,8 @@ public class VoxelPlaneTools {
 		int childIndex = -1;
 		VoxelLevel voxelLevel = voxelLevelOrigin;
 		for (int level = originLevel; level > targetLevel && voxelLevel != null; --level) {
+			// all voxels of a uniform node share its leaf
+			if (voxelLevel.uniform() != null) return voxelLevel.uniform();
 			childIndex = getChildIndex(level, x, y, z);
 			voxelLevel = voxelLevel.child(childIndex);
 		}
@@ -374,7 +379,7 @@ public class VoxelPlaneTools {
 			Direction.back };
 
 	private static void determineVoxelPlaneFacesDirection (VoxelOctree voxelOctree, VoxelLevelChunk chunk,
-			VoxelLevelEntity[][][] volume, byte[][][] faces) {
+			IVoxelVolume volume, byte[][][] faces) {
 		PlaneHelper[] planeHelpers = PlaneHelperPool.get().obtain();
 		for (Direction direction : directions) {
 //			System.out.println("build planes dir: " + direction);
@@ -405,7 +410,7 @@ public class VoxelPlaneTools {
 	}
 
 	public static void determineVoxelPlaneFaces (VoxelOctree voxelOctree, VoxelLevelChunk chunk,
-			VoxelLevelEntity[][][] volume, byte[][][] faces) {
+			IVoxelVolume volume, byte[][][] faces) {
 		determineVoxelPlaneFacesDirection(voxelOctree, chunk, volume, faces);
 //		mergePlanes(chunk.planeList);
 	}
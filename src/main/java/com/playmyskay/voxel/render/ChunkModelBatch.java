@@ -111,6 +111,7 @@ public class ChunkModelBatch extends ModelBatch implements RenderableProvider {
 		switch (updateData.type) {
 		case addChunk:
 		case addVoxel:
+		case updateChunk:
 			addQueue.add(updateData);
 			break;
 		case removeChunk:
@@ -166,6 +167,7 @@ public class ChunkModelBatch extends ModelBatch implements RenderableProvider {
 				remove(renderable);
 			}
 			chunkMap.remove(chunk);
+			chunk.unpin();
 		}
 	}
 
@@ -197,6 +199,8 @@ public class ChunkModelBatch extends ModelBatch implements RenderableProvider {
 		if (renderableList == null) {
 			renderableList = new ArrayList<Renderable>();
 			chunkMap.put(chunk, renderableList);
+			// the chunk is the key of its renderables until they are removed
+			chunk.pin();
 		}
 		renderableList.add(renderable);
 	}
@@ -227,9 +231,15 @@ public class ChunkModelBatch extends ModelBatch implements RenderableProvider {
 			case removeVoxel:
 				removeVoxel(ud.voxelLevelChunk);
 				break;
+			case updateChunk:
+				// the new mesh replaces the renderables of the chunk
+				removeChunk(ud.voxelLevelChunk);
+				if (ud.renderableData != null) add(ud.voxelWorld, ud.renderableData, ud.voxelLevelChunk);
+				break;
 			default:
 				break;
 			}
+			ud.release();
 			++updateCount;
 			time_delta = System.nanoTime() - time_start;
 		}
@@ -2,13 +2,21 @@ package com.playmyskay.voxel.render;
 
 import java.util.concurrent.ConcurrentLinkedQueue;
 
+import com.badlogic.gdx.math.Vector3;
+import com.playmyskay.voxel.level.IVoxelVolume;
+import com.playmyskay.voxel.level.VoxelEntityVolume;
+import com.playmyskay.voxel.level.VoxelLevelChunk;
+import com.playmyskay.voxel.plane.VoxelPlaneTools;
 import com.playmyskay.voxel.world.IChunkUpdateListener;
 import com.playmyskay.voxel.world.UpdateData;
+import com.playmyskay.voxel.world.VoxelWorld;
 
 class RenderUpdateManager implements IChunkUpdateListener {
 //	private HashMap<VoxelLevelChunk, ChunkRenderable> map = new HashMap<>();
 	private IRenderableHandler renderableHandler;
 	private ConcurrentLinkedQueue<RenderUpdateData> updateQueue = new ConcurrentLinkedQueue<>();
+	// only used by the update thread
+	private byte[][][] faces = new byte[VoxelWorld.CHUNK_SIZE][VoxelWorld.CHUNK_SIZE][VoxelWorld.CHUNK_SIZE];
 
 	public RenderUpdateManager(IRenderableHandler renderableHandler) {
 		this.renderableHandler = renderableHandler;
@@ -30,7 +38,10 @@ class RenderUpdateManager implements IChunkUpdateListener {
 
 	public void add (UpdateData updateData) {
 		if (updateData == null) return;
-		if (!(updateData instanceof RenderUpdateData)) return;
+		if (!(updateData instanceof RenderUpdateData)) {
+			updateData.release();
+			return;
+		}
 
 		RenderUpdateData renderUpdateData = (RenderUpdateData) updateData;
 		updateQueue.offer(renderUpdateData);
@@ -48,10 +59,16 @@ class RenderUpdateManager implements IChunkUpdateListener {
 				break;
 			case addVoxel:
 				addVoxel(updateData);
+				updateData.release();
+				break;
+			case updateChunk:
+				updateChunk(updateData);
 				break;
 			case removeVoxel:
 				removeVoxel(updateData);
 			default:
+				// not passed on to the renderable handler
+				updateData.release();
 				break;
 			}
 		}
@@ -76,7 +93,10 @@ class RenderUpdateManager implements IChunkUpdateListener {
 
 	private void addChunk (RenderUpdateData ud) {
 		// only chunks with planes or skip
-		if (ud.voxelLevelChunk.planeListList.size() == 0) return;
+		if (ud.voxelLevelChunk.planeListList.size() == 0) {
+			ud.release();
+			return;
+		}
 
 		// new renderable data
 		ud.renderableData = new RenderableData();
@@ -98,6 +118,26 @@ class RenderUpdateManager implements IChunkUpdateListener {
 //		}
 	}
 
+	/* meshes a changed chunk again, a chunk which has been removed from the octree meanwhile loses its renderables */
+	private void updateChunk (RenderUpdateData ud) {
+		VoxelLevelChunk chunk = ud.voxelLevelChunk;
+		Vector3 min = chunk.boundingBox().min;
+		if (ud.voxelWorld.voxelOctree.getChunk((int) min.x, (int) min.y, (int) min.z) != chunk) {
+			ud.type = UpdateType.removeChunk;
+			renderableHandler.update(ud);
+			return;
+		}
+
+		IVoxelVolume volume = chunk.stored() ? chunk.storage()
+				: new VoxelEntityVolume(VoxelPlaneTools.createVolume(ud.voxelWorld.voxelOctree, chunk));
+		chunk.rebuild(volume, faces);
+		if (chunk.planeListList.size() > 0) {
+			ud.renderableData = new RenderableData();
+			ChunkMesher.calculateChunkMeshData(ud.voxelWorld, chunk, ud.renderableData);
+		}
+		renderableHandler.update(ud);
+	}
+
 	private void addVoxel (RenderUpdateData ud) {
 //		ChunkRenderable chunkRenderable = map.get(ud.voxelLevelChunk);
 //		if (chunkRenderable != null) {
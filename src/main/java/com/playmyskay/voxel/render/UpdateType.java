@@ -1,5 +1,5 @@
 package com.playmyskay.voxel.render;
 
 public enum UpdateType {
-	addChunk, removeChunk, addVoxel, removeVoxel
+	addChunk, removeChunk, addVoxel, removeVoxel, updateChunk
 }
\ No newline at end of file
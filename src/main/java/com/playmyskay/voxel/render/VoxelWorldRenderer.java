@@ -13,7 +13,9 @@ public class VoxelWorldRenderer {
 	public VoxelWorldRenderer(VoxelWorld voxelWorld) {
 		this.voxelWorld = voxelWorld;
 		voxelWorld.chunkManager.addUpdateListener(renderUpdateManager);
-		voxelWorld.voxelOctree.addListener(new WorldUpdateListener(renderUpdateManager));
+		WorldUpdateListener worldUpdateListener = new WorldUpdateListener(renderUpdateManager, voxelWorld);
+		voxelWorld.voxelOctree.addListener(worldUpdateListener);
+		voxelWorld.voxelOctree.addBatchListener(worldUpdateListener);
 	}
 
 	public void camera (Camera camera) {
@@ -1,5 +1,6 @@
 package com.playmyskay.voxel.render;
 
+import com.playmyskay.octree.common.IOctreeBatchListener;
 import com.playmyskay.voxel.common.VoxelOctreeListener;
 import com.playmyskay.voxel.common.descriptors.VoxelDescriptor;
 import com.playmyskay.voxel.level.VoxelLevel;
@@ -7,13 +8,16 @@ import com.playmyskay.voxel.level.VoxelLevelChunk;
 import com.playmyskay.voxel.level.VoxelLevelEntity;
 import com.playmyskay.voxel.level.VoxelLevelTools;
 import com.playmyskay.voxel.world.UpdateData;
+import com.playmyskay.voxel.world.VoxelWorld;
 
-public class WorldUpdateListener extends VoxelOctreeListener {
+public class WorldUpdateListener extends VoxelOctreeListener implements IOctreeBatchListener<VoxelLevel> {
 
 	private RenderUpdateManager renderableManager;
+	private VoxelWorld voxelWorld;
 
-	public WorldUpdateListener(RenderUpdateManager renderableManager) {
+	public WorldUpdateListener(RenderUpdateManager renderableManager, VoxelWorld voxelWorld) {
 		this.renderableManager = renderableManager;
+		this.voxelWorld = voxelWorld;
 	}
 
 	@Override
@@ -37,4 +41,16 @@ public class WorldUpdateListener extends VoxelOctreeListener {
 			}
 		}
 	}
+
+	/* the chunk changed by a batch or a range delete is meshed again as a whole */
+	@Override
+	public void update (BatchUpdateData<VoxelLevel> batchUpdateData) {
+		if (!(batchUpdateData.node instanceof VoxelLevelChunk)) return;
+		UpdateData updateData = renderableManager.create();
+		updateData.type = UpdateType.updateChunk;
+		updateData.voxelWorld = voxelWorld;
+		updateData.voxelLevelChunk = (VoxelLevelChunk) batchUpdateData.node;
+		updateData.pin();
+		renderableManager.add(updateData);
+	}
 }
@@ -21,6 +21,11 @@ public class VoxelTypeDescriptor {
 		return true;
 	}
 
+	/* id of the type, see VoxelTypeRegistry */
+	public short id () {
+		return VoxelTypeRegistry.id(voxelType, lookType);
+	}
+
 	public VoxelTypeDescriptor copy () {
 		VoxelTypeDescriptor voxelTypeDescriptor = new VoxelTypeDescriptor();
 		voxelTypeDescriptor.lookType = lookType;
@@ -0,0 +1,92 @@
+package com.playmyskay.voxel.type;
+
+import com.playmyskay.voxel.look.VoxelLookType;
+
+/*
+ * Interns voxel types to dense short ids. A type is identified by its usage and look type, so every combination gets
+ * its id and a shared descriptor up front and an id is found in O(1) without locking. Id 0 is the empty cell. The ids
+ * only depend on the order of the enum constants and stay the same from run to run as long as constants are only
+ * appended.
+ *
+ * The properties the renderer, the mesher and the filters ask for are computed per id, so code working on ids never
+ * touches a descriptor. The shared descriptors must not be changed.
+ */
+public class VoxelTypeRegistry {
+	public static final short EMPTY = 0;
+
+	private static final VoxelUsageType[] usageTypes = VoxelUsageType.values();
+	private static final VoxelLookType[] lookTypes = VoxelLookType.values();
+
+	private static final VoxelTypeDescriptor[] descriptors = new VoxelTypeDescriptor[1
+			+ usageTypes.length * lookTypes.length];
+	private static final int[] lookMasks = new int[descriptors.length];
+	private static final int[] usageMasks = new int[descriptors.length];
+	// hides the voxels behind the faces of the type
+	private static final boolean[] opaque = new boolean[descriptors.length];
+	// stops movement and rays of the viewer, the overlays of viewer, selection and preview do not
+	private static final boolean[] solid = new boolean[descriptors.length];
+
+	static {
+		for (VoxelUsageType voxelType : usageTypes) {
+			for (VoxelLookType lookType : lookTypes) {
+				VoxelTypeDescriptor descriptor = new VoxelTypeDescriptor();
+				descriptor.voxelType = voxelType;
+				descriptor.lookType = lookType;
+
+				short id = id(voxelType, lookType);
+				descriptors[id] = descriptor;
+				lookMasks[id] = 1 << lookType.ordinal();
+				usageMasks[id] = 1 << voxelType.ordinal();
+				opaque[id] = lookType != VoxelLookType.Water;
+				solid[id] = voxelType == VoxelUsageType.undef || voxelType == VoxelUsageType.voxel_static;
+			}
+		}
+	}
+
+	private VoxelTypeRegistry() {
+
+	}
+
+	public static short id (VoxelUsageType voxelType, VoxelLookType lookType) {
+		return (short) (1 + voxelType.ordinal() * lookTypes.length + lookType.ordinal());
+	}
+
+	/* id of the type of the descriptor, EMPTY for null */
+	public static short id (VoxelTypeDescriptor descriptor) {
+		if (descriptor == null) return EMPTY;
+		return id(descriptor.voxelType, descriptor.lookType);
+	}
+
+	/* the shared descriptor equal to the given one */
+	public static VoxelTypeDescriptor intern (VoxelTypeDescriptor descriptor) {
+		return descriptors[id(descriptor)];
+	}
+
+	/* the shared descriptor of the id, null for EMPTY */
+	public static VoxelTypeDescriptor descriptor (short id) {
+		return descriptors[id];
+	}
+
+	/* number of ids including EMPTY */
+	public static int size () {
+		return descriptors.length;
+	}
+
+	/* bit lookType.ordinal() of the type, 0 for EMPTY */
+	public static int lookMask (short id) {
+		return lookMasks[id];
+	}
+
+	/* bit voxelType.ordinal() of the type, 0 for EMPTY */
+	public static int usageMask (short id) {
+		return usageMasks[id];
+	}
+
+	public static boolean opaque (short id) {
+		return opaque[id];
+	}
+
+	public static boolean solid (short id) {
+		return solid[id];
+	}
+}
@@ -9,8 +9,6 @@ import java.util.concurrent.Future;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.math.collision.BoundingBox;
 import com.badlogic.gdx.utils.GdxRuntimeException;
-import com.playmyskay.octree.common.OctreeCalc;
-import com.playmyskay.octree.common.OctreeCalcPoolManager;
 import com.playmyskay.octree.common.OctreeNodeDescriptor.BaseActionType;
 import com.playmyskay.octree.common.OctreeNodeTools;
 import com.playmyskay.octree.common.OctreeTools;
@@ -18,16 +16,18 @@ import com.playmyskay.octree.common.OctreeTools.INodeHandler;
 import com.playmyskay.voxel.common.VoxelNodeProvider;
 import com.playmyskay.voxel.common.descriptors.AddVoxelDescriptor;
 import com.playmyskay.voxel.common.descriptors.VoxelDescriptor;
+import com.playmyskay.voxel.level.VoxelChunkStorage;
+import com.playmyskay.voxel.level.VoxelEntityVolume;
 import com.playmyskay.voxel.level.VoxelLevel;
 import com.playmyskay.voxel.level.VoxelLevelChunk;
 import com.playmyskay.voxel.level.VoxelLevelEntity;
 import com.playmyskay.voxel.look.VoxelLookType;
 import com.playmyskay.voxel.processing.JobProcessor;
 import com.playmyskay.voxel.render.UpdateType;
+import com.playmyskay.voxel.type.VoxelTypeRegistry;
 import com.playmyskay.voxel.world.IVoxelWorldProvider.WorldData;
 
 public class ChunkManager {
-	private Map<Vector3, VoxelLevelChunk> cachedChunkSet;
 	private Map<Vector3, VoxelLevelChunk> visibleChunkSet;
 	private Map<Vector3, VoxelLevelChunk> tmpChunkSet;
 	private List<IChunkUpdateListener> updateListeners = new ArrayList<>();
@@ -47,7 +47,6 @@ public class ChunkManager {
 		this.voxelWorld = voxelWorld;
 
 		int capacity = voxelWorld.cached_chunk_width * voxelWorld.cached_chunk_depth * voxelWorld.cached_chunk_height;
-		this.cachedChunkSet = new HashMap<>(capacity);
 		this.visibleChunkSet = new HashMap<>(capacity);
 		this.tmpChunkSet = new HashMap<>(capacity);
 	}
@@ -93,8 +92,8 @@ public class ChunkManager {
 		void finish ();
 	}
 
-	private void handleCachedChunks (final VoxelWorld world, Map<Vector3, VoxelLevelChunk> tmpChunkSet,
-			Map<Vector3, VoxelLevelChunk> cachedChunkSet) {
+	/* the cached chunks are the chunks attached to the octree, found by its chunk index */
+	private void handleCachedChunks (final VoxelWorld world, Map<Vector3, VoxelLevelChunk> tmpChunkSet) {
 		tmpChunkSet.clear();
 
 		AddVoxelDescriptor descriptor = new AddVoxelDescriptor();
@@ -120,21 +119,15 @@ public class ChunkManager {
 
 		List<Future<?>> futures = new ArrayList<>();
 		handleBounds(world.getCachedBoundingBox(), new IChunkHandler() {
-			private OctreeCalc calc = OctreeCalcPoolManager.obtain();
-			private Vector3 searchVector = calc.vector();
 			private Vector3 min = new Vector3();
 			private Vector3 max = new Vector3();
 
 			@Override
 			public void handle (int chunk_pos_x, int chunk_pos_y, int chunk_pos_z) {
-				if (world.voxelOctree != calc.octree()) {
-					calc.octree(world.voxelOctree);
-				}
-
-				VoxelLevelChunk chunk = searchChunk(cachedChunkSet, chunk_pos_x, chunk_pos_y, chunk_pos_z,
-						searchVector);
-				if (chunk == null || !chunk.valid()) {
-					chunk = new VoxelLevelChunk();
+				VoxelLevelChunk chunk = searchChunk(world, chunk_pos_x, chunk_pos_y, chunk_pos_z);
+				boolean cached = chunk != null && chunk.valid();
+				if (!cached) {
+					chunk = (VoxelLevelChunk) world.voxelOctree.nodeProvider.create(VoxelWorld.CHUNK_LEVEL);
 					chunk.boundingBox().set(min.set(chunk_pos_x, chunk_pos_y, chunk_pos_z),
 							max.set(chunk_pos_x + VoxelWorld.CHUNK_SIZE, chunk_pos_y + VoxelWorld.CHUNK_SIZE,
 									chunk_pos_z + VoxelWorld.CHUNK_SIZE));
@@ -142,18 +135,24 @@ public class ChunkManager {
 				tmpChunkSet.put(chunk.boundingBox().min, chunk);
 
 				final VoxelLevelChunk chunk2 = chunk;
-				if (!cachedChunkSet.containsKey(chunk.boundingBox().min)) {
+				if (!cached) {
 					futures.add(JobProcessor.add(new Runnable() {
 						@Override
 						public void run () {
-							OctreeCalc calc2 = OctreeCalcPoolManager.obtain();
-							calc2.octree(calc.octree());
-							VoxelLevelEntity[][][] volume = volumePool.obtain();
 							byte[][][] faces = facePool.obtain();
+							if (VoxelWorld.STORE_CHUNKS) {
+								VoxelChunkStorage storage = createStoredChunk(world, chunk2, chunk_pos_x, chunk_pos_y,
+										chunk_pos_z, lookDescriptorMap);
+								chunk2.rebuild(storage, faces);
+								facePool.free(faces);
+								return;
+							}
+
+							VoxelLevelEntity[][][] volume = volumePool.obtain();
 							createChunk2(world, chunk2, volume, chunk_pos_x, chunk_pos_y, chunk_pos_z,
-									lookDescriptorMap, calc2);
-							chunk2.rebuild(volume, faces);
-							OctreeCalcPoolManager.free(calc2);
+									lookDescriptorMap);
+							chunk2.rebuild(new VoxelEntityVolume(volume), faces);
+							if (VoxelWorld.DEDUPLICATE_CHUNKS) world.voxelOctree.compact(chunk2);
 							volumePool.free(volume);
 							facePool.free(faces);
 						}
@@ -163,7 +162,7 @@ public class ChunkManager {
 
 			@Override
 			public void finish () {
-				OctreeCalcPoolManager.free(calc);
+
 			}
 		});
 
@@ -176,39 +175,30 @@ public class ChunkManager {
 			}
 		}
 
+		// the evicted chunks are recycled by reclaim() once the snapshots and the renderer are done with them
 		INodeHandler<VoxelLevel> nodeHandler = new INodeHandler<VoxelLevel>() {
 			@Override
 			public void process (VoxelLevel node) {
-				((VoxelNodeProvider) world.voxelOctree.nodeProvider).free(node);
+				world.voxelOctree.retire(node);
 			}
 
 		};
 
-		for (Map.Entry<Vector3, VoxelLevelChunk> entry : cachedChunkSet.entrySet()) {
-			if (!tmpChunkSet.containsKey(entry.getKey())) {
-				OctreeTools.removeNode(entry.getValue(), nodeHandler);
+		for (VoxelLevel chunk : world.voxelOctree.getChunks(null, new ArrayList<>())) {
+			if (tmpChunkSet.get(chunk.boundingBox().min) != chunk) {
+				world.voxelOctree.removeNode(chunk, nodeHandler);
 			}
 		}
-
-		cachedChunkSet.clear();
-		for (Map.Entry<Vector3, VoxelLevelChunk> entry : tmpChunkSet.entrySet()) {
-			if (!entry.getValue().valid()) continue;
-			cachedChunkSet.put(entry.getKey(), entry.getValue());
-		}
 	}
 
 	private static void handleVisibleChunks (VoxelWorld world, Map<Vector3, VoxelLevelChunk> tmpChunkSet,
-			Map<Vector3, VoxelLevelChunk> visibleChunkSet, Map<Vector3, VoxelLevelChunk> cachedChunkSet,
-			ChunkManager chunkManager) {
+			Map<Vector3, VoxelLevelChunk> visibleChunkSet, ChunkManager chunkManager) {
 		tmpChunkSet.clear();
 		List<Future<?>> futures = new ArrayList<>();
 		handleBounds(world.getVisibilityBoundingBox(), new IChunkHandler() {
-			private Vector3 searchVector = new Vector3();
-
 			@Override
 			public void handle (int chunk_pos_x, int chunk_pos_y, int chunk_pos_z) {
-				VoxelLevelChunk chunk = searchChunk(cachedChunkSet, chunk_pos_x, chunk_pos_y, chunk_pos_z,
-						searchVector);
+				VoxelLevelChunk chunk = searchChunk(world, chunk_pos_x, chunk_pos_y, chunk_pos_z);
 				if (chunk != null && chunk.valid()) {
 					tmpChunkSet.put(chunk.boundingBox().min, chunk);
 
@@ -245,76 +235,72 @@ public class ChunkManager {
 			}
 		}
 
+		// the visible chunks are pinned, their bounding boxes are the keys of the set
+		for (VoxelLevelChunk chunk : visibleChunkSet.values()) {
+			chunk.unpin();
+		}
 		visibleChunkSet.clear();
 		for (Map.Entry<Vector3, VoxelLevelChunk> entry : tmpChunkSet.entrySet()) {
 			if (!entry.getValue().valid()) continue;
+			entry.getValue().pin();
 			visibleChunkSet.put(entry.getKey(), entry.getValue());
 		}
 	}
 
 	private void updateOctree () {
-		handleCachedChunks(voxelWorld, tmpChunkSet, cachedChunkSet);
-		handleVisibleChunks(voxelWorld, tmpChunkSet, visibleChunkSet, cachedChunkSet, this);
+		handleCachedChunks(voxelWorld, tmpChunkSet);
+		handleVisibleChunks(voxelWorld, tmpChunkSet, visibleChunkSet, this);
+		voxelWorld.voxelOctree.reclaim();
+		((VoxelNodeProvider) voxelWorld.voxelOctree.nodeProvider).trim();
 	}
 
-	private static VoxelLevelChunk searchChunk (Map<Vector3, VoxelLevelChunk> map, int chunk_pos_x, int chunk_pos_y,
-			int chunk_pos_z, Vector3 searchVector) {
-		searchVector.set(chunk_pos_x, chunk_pos_y, chunk_pos_z);
-		VoxelLevelChunk chunk = map.get(searchVector);
-		return chunk;
+	private static VoxelLevelChunk searchChunk (VoxelWorld world, int chunk_pos_x, int chunk_pos_y, int chunk_pos_z) {
+		VoxelLevel chunk = world.voxelOctree.getChunk(chunk_pos_x, chunk_pos_y, chunk_pos_z);
+		return chunk instanceof VoxelLevelChunk ? (VoxelLevelChunk) chunk : null;
 	}
 
 	private static void createChunk (VoxelWorld world, VoxelLevelChunk chunk, int offset_x, int offset_y, int offset_z,
-			Map<VoxelLookType, VoxelDescriptor> lookDescriptorMap, OctreeCalc calc) {
-		float cur_pos_x = 0f;
-		float cur_pos_y = 0f;
-		float cur_pos_z = 0f;
-
+			Map<VoxelLookType, VoxelDescriptor> lookDescriptorMap) {
 //		LevelIndexer levelIndexer = new LevelIndexer();
 //		levelIndexer.nodeArry = new Array<OctreeNode<?>>(3);
 //		calc.levelIndexer();
 
-		Vector3 v = new Vector3();
+		int pos_x = 0;
+		int pos_y = 0;
+		int pos_z = 0;
 		VoxelDescriptor grassDescriptor = lookDescriptorMap.get(VoxelLookType.Grass);
 		VoxelDescriptor waterDescriptor = lookDescriptorMap.get(VoxelLookType.Water);
 		VoxelDescriptor sandDescriptor = lookDescriptorMap.get(VoxelLookType.Sand);
 		for (int x = 0; x < VoxelWorld.CHUNK_SIZE; ++x) {
 			for (int y = 0; y < VoxelWorld.CHUNK_SIZE; ++y) {
 				for (int z = 0; z < VoxelWorld.CHUNK_SIZE; ++z) {
-					cur_pos_x = (offset_x + x);
-					cur_pos_y = (offset_y + y);
-					cur_pos_z = (offset_z + z);
-					if (world.worldProvider.get(cur_pos_x, cur_pos_y, cur_pos_z)) {
-						v.set(offset_x + x, offset_y + y, offset_z + z);
-//						if (Logger.get() != null) {
-////							Logger.get().log(String.format("x%.0f y%.0f z%.0f", v.x, v.y, v.z));
-//						}
-
-						if (v.y >= 0 && v.y < 18f) {
-							OctreeNodeTools.addNodeByVector(world.voxelOctree.nodeProvider, chunk, v, sandDescriptor,
-									calc);
+					pos_x = offset_x + x;
+					pos_y = offset_y + y;
+					pos_z = offset_z + z;
+					if (world.worldProvider.get(pos_x, pos_y, pos_z)) {
+						if (pos_y >= 0 && pos_y < 18) {
+							OctreeNodeTools.addNodeByPosition(world.voxelOctree.nodeProvider, chunk,
+									VoxelWorld.CHUNK_LEVEL, pos_x, pos_y, pos_z, sandDescriptor);
 						} else {
-							OctreeNodeTools.addNodeByVector(world.voxelOctree.nodeProvider, chunk, v, grassDescriptor,
-									calc);
+							OctreeNodeTools.addNodeByPosition(world.voxelOctree.nodeProvider, chunk,
+									VoxelWorld.CHUNK_LEVEL, pos_x, pos_y, pos_z, grassDescriptor);
 						}
 					} else {
-						v.set(offset_x + x, offset_y + y, offset_z + z);
-						if (v.y <= 16f) {
-							OctreeNodeTools.addNodeByVector(world.voxelOctree.nodeProvider, chunk, v, waterDescriptor,
-									calc);
+						if (pos_y <= 16) {
+							OctreeNodeTools.addNodeByPosition(world.voxelOctree.nodeProvider, chunk,
+									VoxelWorld.CHUNK_LEVEL, pos_x, pos_y, pos_z, waterDescriptor);
 						}
 					}
 				}
 			}
 		}
 
-		calc.reset();
-		world.voxelOctree.addNode(chunk, BaseActionType.add, calc);
+		world.voxelOctree.addNode(chunk, BaseActionType.add);
 		chunk.valid(true);
 	}
 
 	private static void createChunk3 (VoxelWorld world, VoxelLevelChunk chunk, int level, int offset_x, int offset_y,
-			int offset_z, Map<VoxelLookType, VoxelDescriptor> lookDescriptorMap, OctreeCalc calc) {
+			int offset_z, Map<VoxelLookType, VoxelDescriptor> lookDescriptorMap) {
 
 		float cur_pos_x = 0f;
 		float cur_pos_y = 0f;
@@ -339,7 +325,7 @@ public class ChunkManager {
 
 					if (world.worldProvider.get(cur_pos_x, cur_pos_y, cur_pos_z)) {
 						volume[x][y][z] = new VoxelLevelEntity();
-						volume[x][y][z].descriptor = grassDescriptor.voxelTypeDescriptor;
+						volume[x][y][z].descriptor = VoxelTypeRegistry.intern(grassDescriptor.voxelTypeDescriptor);
 					}
 				}
 			}
@@ -348,7 +334,7 @@ public class ChunkManager {
 
 	private static void createChunk2 (VoxelWorld world, VoxelLevelChunk chunk, VoxelLevelEntity[][][] volume,
 			int worldPosition_x, int worldPosition_y, int worldPosition_z,
-			Map<VoxelLookType, VoxelDescriptor> lookDescriptorMap, OctreeCalc calc) {
+			Map<VoxelLookType, VoxelDescriptor> lookDescriptorMap) {
 //		LevelIndexer levelIndexer = new LevelIndexer();
 //		levelIndexer.nodeArry = new Array<OctreeNode<?>>(3);
 //		calc.levelIndexer();
@@ -386,9 +372,33 @@ public class ChunkManager {
 		processChildNode(world, worldData, volume, chunk, chunkLevelIndex, levelDivider, worldPosition_x,
 				worldPosition_y, worldPosition_z, 0, 0, 0, lookDescriptorMap);
 
-		calc.reset();
-		world.voxelOctree.addNode(chunk, BaseActionType.add, calc);
+		world.voxelOctree.addNode(chunk, BaseActionType.add);
+		chunk.valid(true);
+	}
+
+	/* fills the storage of a stored chunk instead of creating a node per voxel */
+	private static VoxelChunkStorage createStoredChunk (VoxelWorld world, VoxelLevelChunk chunk, int worldPosition_x,
+			int worldPosition_y, int worldPosition_z, Map<VoxelLookType, VoxelDescriptor> lookDescriptorMap) {
+		VoxelChunkStorage storage = new VoxelChunkStorage(VoxelWorld.CHUNK_SIZE);
+		short grassType = lookDescriptorMap.get(VoxelLookType.Grass).voxelTypeDescriptor.id();
+		WorldData worldData = new WorldData();
+		for (int y = 0; y < VoxelWorld.CHUNK_SIZE; ++y) {
+			for (int z = 0; z < VoxelWorld.CHUNK_SIZE; ++z) {
+				for (int x = 0; x < VoxelWorld.CHUNK_SIZE; ++x) {
+					worldData.x = worldPosition_x + x;
+					worldData.y = worldPosition_y + y;
+					worldData.z = worldPosition_z + z;
+					if (world.worldProvider.get(worldData)) {
+						storage.set(x, y, z, grassType);
+					}
+				}
+			}
+		}
+
+		chunk.storage(storage);
+		world.voxelOctree.addNode(chunk, BaseActionType.add);
 		chunk.valid(true);
+		return storage;
 	}
 
 	private static VoxelLevel processChildNode (VoxelWorld world, WorldData worldData, VoxelLevelEntity[][][] volume,
@@ -412,6 +422,8 @@ public class ChunkManager {
 						childNode = processChildNode(world, worldData, volume, null, level - 1, levelDivider,
 								worldPosition_x, worldPosition_y, worldPosition_z, calc_offset_x, calc_offset_y,
 								calc_offset_z, lookDescriptorMap);
+						// solid regions below the chunk are kept as one uniform node, the volume keeps the entities
+						OctreeTools.collapse(childNode);
 					} else if (level == 1) {
 						childNode = createEntityLevel(world, worldData, volume, worldPosition_x, worldPosition_y,
 								worldPosition_z, calc_offset_x, calc_offset_y, calc_offset_z, lookDescriptorMap);
@@ -424,7 +436,7 @@ public class ChunkManager {
 						childNode.parent(parentNode);
 
 						if (parentNode.childs() == null) {
-							parentNode.childs(world.voxelOctree.nodeProvider.createArray(level - 1, 8));
+							OctreeTools.createChilds(world.voxelOctree.nodeProvider, parentNode, level);
 						}
 						parentNode.child(index, childNode);
 					}
@@ -445,7 +457,8 @@ public class ChunkManager {
 		worldData.z = worldPosition_z + offset_z;
 		if (world.worldProvider.get(worldData)) {
 			VoxelLevelEntity entity = (VoxelLevelEntity) world.voxelOctree.nodeProvider.create(0);
-			entity.descriptor = lookDescriptorMap.get(VoxelLookType.Grass).voxelTypeDescriptor;
+			entity.descriptor = VoxelTypeRegistry
+					.intern(lookDescriptorMap.get(VoxelLookType.Grass).voxelTypeDescriptor);
 			volume[offset_x][offset_y][offset_z] = entity;
 			return entity;
 		} else {
@@ -464,6 +477,7 @@ public class ChunkManager {
 			updateData.type = updateType;
 			updateData.voxelWorld = voxelWorld;
 			updateData.voxelLevelChunk = chunk;
+			updateData.pin();
 			listener.add(updateData);
 		}
 	}
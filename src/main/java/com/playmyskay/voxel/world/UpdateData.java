@@ -9,4 +9,18 @@ public class UpdateData {
 	public VoxelWorld voxelWorld;
 	public VoxelLevelChunk voxelLevelChunk;
 	public VoxelLevelEntity voxelLevelEntity;
+	private boolean pinned;
+
+	/* keeps the chunk from being recycled until the consumer of the update calls release() */
+	public void pin () {
+		if (pinned || voxelLevelChunk == null) return;
+		voxelLevelChunk.pin();
+		pinned = true;
+	}
+
+	public void release () {
+		if (!pinned) return;
+		pinned = false;
+		voxelLevelChunk.unpin();
+	}
 }
\ No newline at end of file
@@ -88,6 +88,14 @@ public class VoxelWorld {
 	public static int CHUNK_LEVEL = 5;
 	public static int CHUNK_SIZE = 32;
 	public static int CHUNK_DIM = CHUNK_SIZE * CHUNK_SIZE * CHUNK_SIZE;
+	public static boolean LINEAR_OCTREE = true;
+	public static boolean COMPACT_CHILDS = true;
+	public static boolean DEDUPLICATE_CHUNKS = false;
+	// chunks keep their voxels in a palette storage instead of nodes, see VoxelChunkStorage
+	public static boolean STORE_CHUNKS = false;
+	// bytes the node pools may keep, see VoxelLevelPool
+	public static long NODE_POOL_BUDGET = 64L << 20;
+	public static boolean PREWARM_NODE_POOLS = false;
 
 	public static VoxelWorld create (IVoxelWorldProvider worldProvider, IVoxelTypeProvider typeProvider) {
 		return new VoxelWorld(worldProvider, typeProvider);
@@ -140,6 +148,10 @@ public class VoxelWorld {
 		voxelOctree.setNode(v, descriptor);
 	}
 
+	public void setVoxel (int x, int y, int z, VoxelDescriptor descriptor) {
+		voxelOctree.setNode(x, y, z, descriptor);
+	}
+
 	public IVoxelTypeProvider typeProvider () {
 		return typeProvider;
 	}
@@ -0,0 +1,154 @@
+package com.playmyskay.octree.traversal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.Vector3;
+import com.playmyskay.octree.common.IOctreeNodeProvider;
+import com.playmyskay.octree.common.Octree;
+import com.playmyskay.voxel.common.descriptors.AddVoxelDescriptor;
+import com.playmyskay.voxel.common.descriptors.VoxelDescriptor;
+import com.playmyskay.voxel.level.VoxelLevel;
+import com.playmyskay.voxel.level.VoxelLevelChunk;
+import com.playmyskay.voxel.level.VoxelLevelChunkSpace;
+import com.playmyskay.voxel.level.VoxelLevelChunkSpace1;
+import com.playmyskay.voxel.level.VoxelLevelEntity;
+import com.playmyskay.voxel.level.VoxelLevelSpace;
+import com.playmyskay.voxel.world.VoxelWorld;
+
+public class OctreeTraversalTest {
+	private static class NodeProvider implements IOctreeNodeProvider<VoxelLevel> {
+		@Override
+		public VoxelLevel create (int level) {
+			if (level == 0) return new VoxelLevelEntity();
+			if (level == 1) return new VoxelLevelChunkSpace1();
+			if (level == VoxelWorld.CHUNK_LEVEL) return new VoxelLevelChunk();
+			if (level < VoxelWorld.CHUNK_LEVEL) return new VoxelLevelChunkSpace();
+			return new VoxelLevelSpace();
+		}
+
+		@Override
+		public VoxelLevel[] createArray (int level, int size) {
+			return new VoxelLevel[size];
+		}
+
+		@Override
+		public int levelIndex (Class<?> clazz) {
+			if (clazz.equals(VoxelLevelEntity.class)) return 0;
+			if (clazz.equals(VoxelLevelChunk.class)) return VoxelWorld.CHUNK_LEVEL;
+			return -1;
+		}
+
+		@Override
+		public boolean compact () {
+			return false;
+		}
+
+		@Override
+		public int pooled (Class<?> clazz) {
+			return 0;
+		}
+
+		@Override
+		public void free (VoxelLevel node) {
+		}
+	}
+
+	private static class TestOctree extends Octree<VoxelLevel, VoxelDescriptor> {
+		TestOctree() {
+			super(VoxelWorld.CHUNK_LEVEL + 1);
+			setNodeProvider(new NodeProvider());
+		}
+	}
+
+	private static final int SIZE = VoxelWorld.CHUNK_SIZE;
+
+	/* a 4 x 4 grid of chunks at y = 0, each with one voxel */
+	private static TestOctree grid () {
+		TestOctree octree = new TestOctree();
+		AddVoxelDescriptor descriptor = new AddVoxelDescriptor();
+		for (int x = 0; x < 4; ++x) {
+			for (int z = 0; z < 4; ++z) {
+				octree.setNode(x * SIZE + 1, 1, z * SIZE + 1, descriptor);
+			}
+		}
+		return octree;
+	}
+
+	/* a camera at z = -20 looking along z, the planes of a libGDX frustum face inwards */
+	private static Frustum frustum () {
+		Frustum frustum = new Frustum();
+		frustum.planes[0].set(0f, 0f, 1f, 10f);
+		frustum.planes[1].set(0f, 0f, -1f, 50f);
+		frustum.planes[2].set(1f, 0f, 0f, -10f);
+		frustum.planes[3].set(-1f, 0f, 0f, 70f);
+		frustum.planes[4].set(0f, -1f, 0f, 30f);
+		frustum.planes[5].set(0f, 1f, 0f, -1f);
+		return frustum;
+	}
+
+	private static Vector3 eye () {
+		return new Vector3(40f, 16f, -20f);
+	}
+
+	private static Set<String> mins (List<VoxelLevel> chunks) {
+		Set<String> mins = new HashSet<>();
+		for (VoxelLevel chunk : chunks) {
+			Vector3 min = chunk.boundingBox().min;
+			mins.add((int) min.x + "," + (int) min.y + "," + (int) min.z);
+		}
+		return mins;
+	}
+
+	@Test
+	public void visibleChunksAreCulledByTheFrustum () {
+		TestOctree octree = grid();
+		List<VoxelLevel> chunks = OctreeTraversal.getVisibleChunks(octree, frustum(), eye(), new ArrayList<>());
+
+		Set<String> expected = new HashSet<>();
+		for (int x = 0; x < 3; ++x) {
+			for (int z = 0; z < 2; ++z) {
+				expected.add(x * SIZE + ",0," + z * SIZE);
+			}
+		}
+		assertEquals(expected.size(), chunks.size());
+		assertEquals(expected, mins(chunks));
+	}
+
+	@Test
+	public void visibleChunksAreFrontToBack () {
+		TestOctree octree = grid();
+		List<VoxelLevel> chunks = OctreeTraversal.getVisibleChunks(octree, frustum(), eye(), new ArrayList<>());
+
+		// the chunk in front of the eye comes before the one behind it
+		for (int x = 0; x < 3; ++x) {
+			VoxelLevel front = octree.getChunk(x * SIZE, 0, 0);
+			VoxelLevel back = octree.getChunk(x * SIZE, 0, SIZE);
+			assertTrue(chunks.indexOf(front) < chunks.indexOf(back));
+		}
+	}
+
+	@Test
+	public void visibleChunksAreTheAttachedChunks () {
+		TestOctree octree = grid();
+		octree.snapshot();
+		// the edit makes the next query take a new snapshot
+		octree.setNode(SIZE + 2, 1, 1, new AddVoxelDescriptor());
+
+		List<VoxelLevel> chunks = OctreeTraversal.getVisibleChunks(octree, frustum(), eye(), new ArrayList<>());
+		assertEquals(6, chunks.size());
+		for (VoxelLevel chunk : chunks) {
+			Vector3 min = chunk.boundingBox().min;
+			assertSame(octree.getChunk((int) min.x, (int) min.y, (int) min.z), chunk);
+		}
+	}
+}